@@ -0,0 +1,77 @@
+package com.satergo;
+
+import com.satergo.ergo.ErgoInterface;
+import com.satergo.extra.IncorrectPasswordException;
+import com.satergo.extra.KeyDerivation;
+import org.ergoplatform.appkit.Mnemonic;
+import org.ergoplatform.sdk.SecretString;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how long opening a wallet takes, run with ./gradlew jmh.
+ * A wallet of format version 1 needs three PBKDF2 derivations, which were run one after another before and are now run at the same time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WalletOpenBenchmark {
+
+	private static final char[] PASSWORD = "benchmark".toCharArray();
+	private static final byte[] SALT = new byte[12];
+
+	private Path file;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		file = Files.createTempDirectory("satergo-benchmark").resolve("benchmark." + Wallet.FILE_EXTENSION);
+		Mnemonic mnemonic = Mnemonic.create(SecretString.create(ErgoInterface.generateMnemonicPhrase("english")), SecretString.empty());
+		Wallet.create(file, mnemonic, "Benchmark", PASSWORD);
+		bytes = Files.readAllBytes(file);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(file.getParent());
+	}
+
+	@Benchmark
+	public Wallet open() throws IncorrectPasswordException, IOException {
+		return Wallet.decrypt(bytes, file, PASSWORD);
+	}
+
+	@Benchmark
+	public void sequentialLegacyDerivations(Blackhole blackhole) throws Exception {
+		for (int i = 0; i < 3; i++) {
+			blackhole.consume(KeyDerivation.PBKDF2_LEGACY.generateSecretKey(PASSWORD, SALT));
+		}
+	}
+
+	@Benchmark
+	public void concurrentLegacyDerivations(Blackhole blackhole) throws Exception {
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<SecretKey>> keys = IntStream.range(0, 3)
+					.mapToObj(i -> executor.submit(() -> KeyDerivation.PBKDF2_LEGACY.generateSecretKey(PASSWORD, SALT)))
+					.toList();
+			for (Future<SecretKey> key : keys) {
+				blackhole.consume(key.get());
+			}
+		}
+	}
+}
@@ -38,8 +38,10 @@ class LegacyWalletFormat {
 			// nonstandardDerivation is always true because the bug in the ergo-wallet cryptography library
 			// was not yet discovered when formatVersion 0 was made
 			Wallet wallet = Wallet.create(path, Mnemonic.create(seedPhrase, mnemonicPassword), name, password, true);
-			wallet.myAddresses.putAll(myAddresses);
-			wallet.addressBook.putAll(addressBook);
+			wallet.update(() -> {
+				wallet.myAddresses.putAll(myAddresses);
+				wallet.addressBook.putAll(addressBook);
+			});
 			return wallet;
 		}
 	}
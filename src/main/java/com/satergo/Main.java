@@ -5,6 +5,7 @@ import com.satergo.controller.*;
 import com.satergo.ergo.ErgoURI;
 import com.satergo.ergopay.ErgoPayURI;
 import com.satergo.extra.IncorrectPasswordException;
+import com.satergo.extra.Scheduler;
 import com.satergo.extra.market.MarketData;
 import com.satergo.extra.SimpleTask;
 import com.satergo.node.EmbeddedNode;
@@ -103,6 +104,7 @@ public class Main extends Application {
 		scene = new Scene(new Group(), 1030, 600);
 		primaryStage.setScene(scene);
 		primaryStage.setMinWidth(304);
+		primaryStage.iconifiedProperty().addListener((observable, oldValue, newValue) -> Scheduler.get().setMinimized(newValue));
 
 		colorScheme.addListener((observable, oldValue, newValue) -> {
 			scene.getStylesheets().clear();
@@ -172,6 +174,8 @@ public class Main extends Application {
 		if (walletPage != null) {
 			walletPage.cancelRepeatingTasks();
 		}
+		if (wallet != null)
+			wallet.flushSave();
 		try {
 			Launcher.getIPC().stopListening();
 			Files.deleteIfExists(Launcher.getIPC().path);
@@ -249,6 +253,8 @@ public class Main extends Application {
 	}
 
 	public void setWallet(Wallet wallet) {
+		if (this.wallet != null && this.wallet != wallet)
+			this.wallet.flushSave();
 		this.wallet = wallet;
 		programData.lastWallet.set(wallet == null ? null : wallet.path);
 	}
@@ -24,6 +24,13 @@ public class SystemProperties {
 		return Boolean.getBoolean("satergo.alwaysNonstandardDerivation");
 	}
 
+	/**
+	 * The amount of unused addresses in a row after which the search for used addresses stops when a wallet is restored
+	 */
+	public static int addressGapLimit() {
+		return Integer.getInteger("satergo.addressGapLimit", 20);
+	}
+
 	public static String packagePlatform() {
 		return System.getProperty("satergo.packagePlatform", "DEV");
 	}
@@ -4,6 +4,7 @@ import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
 import com.satergo.ergo.ErgoInterface;
+import com.satergo.extra.TokenIconCache;
 import com.satergo.extra.dialog.AbstractSatDialog;
 import com.satergo.extra.dialog.MoveStyle;
 import com.satergo.extra.dialog.SatPasswordInputDialog;
@@ -47,7 +48,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -256,22 +256,12 @@ public class Utils {
 		return VERSION_COMPARATOR.compare(a, b);
 	}
 
-	private static final HashMap<ErgoId, Image> token32Cache = new HashMap<>();
 	public static Image tokenIcon32x32(ErgoId tokenId) {
-		if (token32Cache.containsKey(tokenId))
-			return token32Cache.get(tokenId);
-		Image image = new Image("https://raw.githubusercontent.com/Satergo/Resources/master/token-icons-32x32/" + tokenId + ".png", true);
-		token32Cache.put(tokenId, image);
-		return image;
+		return TokenIconCache.get().icon(tokenId, 32);
 	}
 
-	private static final HashMap<ErgoId, Image> token36Cache = new HashMap<>();
 	public static Image tokenIcon36x36(ErgoId tokenId) {
-		if (token36Cache.containsKey(tokenId))
-			return token36Cache.get(tokenId);
-		Image image = new Image("https://raw.githubusercontent.com/Satergo/Resources/master/token-icons-36x36/" + tokenId + ".png", true);
-		token36Cache.put(tokenId, image);
-		return image;
+		return TokenIconCache.get().icon(tokenId, 36);
 	}
 
 	public static long getTotalSystemMemory() {
@@ -1,9 +1,12 @@
 package com.satergo;
 
 import com.satergo.ergo.Balance;
-import com.satergo.ergo.ErgoInterface;
+import com.satergo.ergo.BalanceFetcher;
+import com.satergo.ergo.UnspentBoxCache;
 import com.satergo.extra.AESEncryption;
 import com.satergo.extra.IncorrectPasswordException;
+import com.satergo.extra.KeyDerivation;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -14,17 +17,27 @@ import org.ergoplatform.appkit.*;
 
 import javax.crypto.AEADBadTagException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.net.ConnectException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.TreeMap;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public final class Wallet {
@@ -36,7 +49,7 @@ public final class Wallet {
 	}
 
 	public static final int MAGIC_NUMBER = 0x36003600;
-	public static final long NEWEST_SUPPORTED_FORMAT = 1;
+	public static final long NEWEST_SUPPORTED_FORMAT = 2;
 
 	@SuppressWarnings("FieldCanBeLocal")
 	private final long formatVersion = NEWEST_SUPPORTED_FORMAT;
@@ -53,20 +66,42 @@ public final class Wallet {
 	// name<->address
 	public final ObservableMap<String, Address> addressBook = FXCollections.observableMap(new HashMap<>());
 
+	// Encrypts the files that are stored outside of the wallet file, like the transaction history, see cacheKey()
+	private byte[] cacheKey = randomCacheKey();
+
+	private static byte[] randomCacheKey() {
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @return A random AES key that is stored in the encrypted details of the wallet, for encrypting the data that
+	 * 	the program stores about this wallet elsewhere, which could otherwise reveal its addresses
+	 */
+	public SecretKey cacheKey() {
+		return new SecretKeySpec(cacheKey, "AES");
+	}
+
 	public int nextAddressIndex() {
 		return internalMyAddresses.lastKey() + 1;
 	}
 
-	private Wallet(Path path, WalletKey key, String name, Map<Integer, String> myAddresses, byte[] detailsIv, SecretKey detailsSecretKey) {
+	private Wallet(Path path, WalletKey key, String name, Map<Integer, String> myAddresses, CompletableFuture<DetailsEncryption> detailsEncryption) {
 		this.path = path;
 		this.key = key;
 		this.name = new SimpleStringProperty(name);
-		this.detailsIv = detailsIv;
-		this.detailsSecretKey = detailsSecretKey;
+		this.detailsEncryption = detailsEncryption;
 
 		this.myAddresses.putAll(myAddresses);
-		this.myAddresses.addListener((MapChangeListener<Integer, String>) change -> saveToFile());
-		this.name.addListener((observable, oldValue, newValue) -> saveToFile());
+		this.myAddresses.addListener((MapChangeListener<Integer, String>) change -> {
+			if (change.wasRemoved() && !change.wasAdded())
+				this.key.forgetDerivedAddress(change.getKey());
+			if (updateDepth == 0) requestSave();
+		});
+		this.name.addListener((observable, oldValue, newValue) -> {
+			if (updateDepth == 0) requestSave();
+		});
 	}
 
 	private WalletKey key;
@@ -78,61 +113,116 @@ public final class Wallet {
 	public final SimpleObjectProperty<Balance> lastKnownBalance = new SimpleObjectProperty<>();
 
 	public Address publicAddress(int index) {
-		return key.derivePublicAddress(Main.programData().nodeNetworkType.get(), index);
+		return derivedAddress(index).address();
+	}
+
+	public WalletKey.DerivedAddress derivedAddress(int index) {
+		return key.derivedAddress(Main.programData().nodeNetworkType.get(), index);
+	}
+
+	/**
+	 * @return The addresses of {@link #myAddresses} in order of index
+	 */
+	public List<WalletKey.DerivedAddress> derivedAddresses() {
+		return key.derivedAddresses(Main.programData().nodeNetworkType.get(), myAddresses.keySet());
 	}
 
 	public Stream<Address> addressStream() {
-		return myAddresses.keySet().stream().map(this::publicAddress);
+		return derivedAddresses().stream().map(WalletKey.DerivedAddress::address);
+	}
+
+	/**
+	 * @return The ErgoTrees in hex of the addresses of {@link #myAddresses}, for lookups
+	 */
+	public Set<String> ergoTreeHexes() {
+		return derivedAddresses().stream().map(WalletKey.DerivedAddress::ergoTreeHex).collect(Collectors.toUnmodifiableSet());
 	}
 
 	/**
 	 * Returns the balance of all addresses combined (checking is done in parallel)
 	 */
 	public Balance totalBalance() throws ConnectException {
-		try {
-			return addressStream().parallel().map(address -> ErgoInterface.getBalance(Main.programData().nodeNetworkType.get(), address))
-					.reduce(Balance::combine).orElseThrow();
-		} catch (RuntimeException e) {
-			if (e.getCause() instanceof ConnectException ce)
-				throw ce;
-			if (e.getCause().getCause() instanceof ConnectException ce)
-				throw ce;
-			throw e;
-		}
+		return totalBalance(null);
+	}
+
+	/**
+	 * Returns the balance of all addresses combined (checking is done in parallel)
+	 * @param onAddressBalance See {@link BalanceFetcher#fetch}
+	 */
+	public Balance totalBalance(BiConsumer<Address, Balance> onAddressBalance) throws ConnectException {
+		return new BalanceFetcher(Main.programData().nodeNetworkType.get()).fetch(addressStream().toList(), onAddressBalance);
+	}
+
+	private UnspentBoxCache unspentBoxCache;
+	private String unspentBoxCacheNode;
+
+	/**
+	 * The unspent boxes of this wallet, see {@link UnspentBoxCache}. A new cache is created if the network type has changed,
+	 * and the cache is emptied if the node has changed, as the new one could be on another fork.
+	 */
+	public synchronized UnspentBoxCache unspentBoxes() {
+		NetworkType networkType = Main.programData().nodeNetworkType.get();
+		String nodeAddress = Main.programData().nodeAddress.get();
+		if (unspentBoxCache == null || unspentBoxCache.networkType() != networkType)
+			unspentBoxCache = new UnspentBoxCache(networkType);
+		else if (!nodeAddress.equals(unspentBoxCacheNode))
+			unspentBoxCache.invalidate();
+		unspentBoxCacheNode = nodeAddress;
+		return unspentBoxCache;
 	}
 
 	public String transact(SignedTransaction signedTx) {
 		return Utils.createErgoClient().execute(ctx -> {
 			String quoted = ctx.sendTransaction(signedTx);
+			unspentBoxes().applySubmitted(signedTx);
 			return quoted.substring(1, quoted.length() - 1);
 		});
 	}
 
+	/**
+	 * The keys are derived on this thread, so this should not be called on the JavaFX thread. The wallet is serialized on the JavaFX thread.
+	 */
 	public void changePassword(char[] currentPassword, char[] newPassword) throws IncorrectPasswordException {
+		WalletKey newKey;
+		DetailsEncryption newDetailsEncryption;
 		try {
-			key = key.changedPassword(currentPassword, newPassword);
-			detailsIv = AESEncryption.generateNonce12();
-			detailsSecretKey = AESEncryption.generateSecretKey(newPassword, detailsIv);
+			newKey = key.changedPassword(currentPassword, newPassword);
+			newDetailsEncryption = DetailsEncryption.generate(newKey.keyDerivation(), newPassword);
 		} catch (WalletKey.Failure e) {
 			throw new IncorrectPasswordException();
-		} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-			throw new RuntimeException(e);
 		}
-		saveToFile();
+		CompletableFuture<Void> saved = new CompletableFuture<>();
+		Utils.runLaterOrNow(() -> {
+			try {
+				key = newKey;
+				detailsEncryption = CompletableFuture.completedFuture(newDetailsEncryption);
+				saveToFile();
+				saved.complete(null);
+			} catch (Throwable t) {
+				saved.completeExceptionally(t);
+			}
+		});
+		saved.join();
 	}
 
 	/**
 	 * creates a new wallet with local key and master address and saves it
 	 */
 	public static Wallet create(Path path, Mnemonic mnemonic, String name, char[] password, boolean nonstandardDerivation) {
-		byte[] detailsIv = AESEncryption.generateNonce12();
-		SecretKey detailsSecretKey;
-		try {
-			detailsSecretKey = AESEncryption.generateSecretKey(password, detailsIv);
-		} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-			throw new RuntimeException(e);
-		}
-		Wallet wallet = new Wallet(path, WalletKey.Local.create(nonstandardDerivation, mnemonic, password), name, Map.of(0, "Master"), detailsIv, detailsSecretKey);
+		return create(path, mnemonic, name, password, nonstandardDerivation, key -> Map.of());
+	}
+
+	/**
+	 * creates a new wallet with local key, master address and the additional addresses, and saves it once.
+	 * The key derivation is calibrated to take about {@link KeyDerivation#DEFAULT_TARGET_TIME} on this computer.
+	 * The keys are derived on this thread, so this should not be called on the JavaFX thread.
+	 * @param additionalAddresses Gives the addresses to add besides the master address using the key, for example the used addresses found by {@link com.satergo.ergo.AddressDiscovery}
+	 */
+	public static Wallet create(Path path, Mnemonic mnemonic, String name, char[] password, boolean nonstandardDerivation, Function<WalletKey, Map<Integer, String>> additionalAddresses) {
+		WalletKey key = WalletKey.Local.create(nonstandardDerivation, mnemonic, password, KeyDerivation.calibrated().join());
+		TreeMap<Integer, String> addresses = new TreeMap<>(additionalAddresses.apply(key));
+		addresses.put(0, "Master");
+		Wallet wallet = new Wallet(path, key, name, addresses, CompletableFuture.completedFuture(DetailsEncryption.generate(key.keyDerivation(), password)));
 		wallet.saveToFile();
 		return wallet;
 	}
@@ -143,14 +233,30 @@ public final class Wallet {
 
 	// ENCRYPTION, SERIALIZATION & STORING
 
-	private byte[] detailsIv;
-	private SecretKey detailsSecretKey;
+	/**
+	 * A new IV is used every time the wallet is opened, so the key for it is derived from the password again
+	 */
+	private record DetailsEncryption(byte[] iv, SecretKey secretKey) {
+		static DetailsEncryption generate(KeyDerivation keyDerivation, char[] password) {
+			byte[] iv = AESEncryption.generateNonce12();
+			try {
+				return new DetailsEncryption(iv, keyDerivation.generateSecretKey(password, iv));
+			} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	// Derived in the background when a wallet is opened, see load
+	private CompletableFuture<DetailsEncryption> detailsEncryption;
 
 	public byte[] serializeEncrypted() throws IOException {
 		try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
 			 DataOutputStream out = new DataOutputStream(bytes)) {
 			out.writeInt(MAGIC_NUMBER);
 			out.writeLong(formatVersion);
+			// both sections are encrypted with keys derived like this
+			key.keyDerivation().write(out);
 
 			out.writeInt(key.encrypted().length);
 			out.write(key.encrypted());
@@ -169,11 +275,13 @@ public final class Wallet {
 					outInfo.writeUTF(entry.getKey());
 					outInfo.writeUTF(entry.getValue().toString());
 				}
+				outInfo.write(cacheKey);
 				outInfo.flush();
 				rawDetailsData = bytesInfo.toByteArray();
 			}
 			// contains the IV and the encrypted data
-			byte[] encryptedDetailsData = AESEncryption.encryptData(detailsIv, detailsSecretKey, rawDetailsData);
+			DetailsEncryption encryption = detailsEncryption.join();
+			byte[] encryptedDetailsData = AESEncryption.encryptData(encryption.iv(), encryption.secretKey(), rawDetailsData);
 			out.writeInt(encryptedDetailsData.length);
 			out.write(encryptedDetailsData);
 			out.flush();
@@ -183,35 +291,137 @@ public final class Wallet {
 		}
 	}
 
-	public void saveToFile() {
+	private static final Duration SAVE_DELAY = Duration.ofMillis(250);
+	private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Wallet writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicBoolean savePending = new AtomicBoolean();
+	// Counts the serializations, so that an older one is never written after a newer one
+	private long serializedGeneration, writtenGeneration;
+	private int updateDepth;
+
+	/**
+	 * Makes the changes and saves once afterward, instead of once for every change
+	 */
+	public void update(Runnable changes) {
+		updateDepth++;
+		try {
+			changes.run();
+		} finally {
+			updateDepth--;
+		}
+		if (updateDepth == 0) requestSave();
+	}
+
+	/**
+	 * Saves the wallet in the background after a short delay, so that changes made in a row are saved together
+	 */
+	public void requestSave() {
+		if (savePending.compareAndSet(false, true))
+			writer.schedule(this::savePendingChanges, SAVE_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Saves now if a save has been requested but not written yet, including one that the writer has serialized but is still writing
+	 */
+	public void flushSave() {
+		boolean unwritten;
+		synchronized (this) {
+			unwritten = savePending.get() || serializedGeneration > writtenGeneration;
+		}
+		// Waits for a write that is in progress, and writes a newer generation so that the one the writer holds is skipped
+		if (unwritten) saveToFile();
+	}
+
+	private record Serialized(long generation, byte[] data) {}
+
+	private void savePendingChanges() {
+		// The key for the details could still be derived after the wallet was opened, it is not waited for on the JavaFX thread
+		detailsEncryption.join();
+		// The properties are changed on the JavaFX thread, so they are read there
+		CompletableFuture<Serialized> serialized = new CompletableFuture<>();
+		Utils.runLaterOrNow(() -> {
+			try {
+				synchronized (this) {
+					// Cleared together with the generation being counted, so that flushSave always sees one or the other
+					savePending.set(false);
+					serialized.complete(new Serialized(++serializedGeneration, serializeEncrypted()));
+				}
+			} catch (Throwable t) {
+				serialized.completeExceptionally(t);
+			}
+		});
+		try {
+			Serialized result = serialized.join();
+			write(result.generation(), result.data());
+		} catch (RuntimeException e) {
+			Platform.runLater(() -> Utils.alertUnexpectedException(e));
+		}
+	}
+
+	/**
+	 * Serializes and writes the wallet now
+	 */
+	public synchronized void saveToFile() {
+		savePending.set(false);
 		try {
-			Files.write(path, serializeEncrypted());
+			write(++serializedGeneration, serializeEncrypted());
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Writes to a temporary file that replaces the wallet file once everything is on the disk, so that an interrupted write cannot corrupt the wallet
+	 */
+	private synchronized void write(long generation, byte[] data) {
+		if (generation <= writtenGeneration) return;
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.wrap(data);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			try {
+				Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		writtenGeneration = generation;
+	}
+
 	/**
 	 * @throws UnsupportedOperationException Cannot deserialize this formatVersion, it is too new
 	 */
 	private static Wallet deserialize(long formatVersion, DataInputStream in, Path path, char[] password) throws IncorrectPasswordException, UnsupportedOperationException, IOException {
-		if (formatVersion == 1) {
+		if (formatVersion == 1 || formatVersion == 2) {
+			KeyDerivation keyDerivation = formatVersion == 1 ? KeyDerivation.PBKDF2_LEGACY : KeyDerivation.read(in);
 			WalletKey key;
 			byte[] decryptedDetails;
-			byte[] detailsEncryptionIv;
-			SecretKey detailsEncryptionKey;
-			try {
-				byte[] encryptedKey = in.readNBytes(in.readInt());
-				byte[] encryptedDetails = in.readNBytes(in.readInt());
-
-				key = WalletKey.deserialize(encryptedKey, ByteBuffer.wrap(AESEncryption.decryptData(password, ByteBuffer.wrap(encryptedKey))));
-				decryptedDetails = AESEncryption.decryptData(password, ByteBuffer.wrap(encryptedDetails));
-
-				detailsEncryptionIv = AESEncryption.generateNonce12();
-				detailsEncryptionKey = AESEncryption.generateSecretKey(password, detailsEncryptionIv);
+			byte[] encryptedKey = in.readNBytes(in.readInt());
+			byte[] encryptedDetails = in.readNBytes(in.readInt());
+			// Each of the three key derivations takes a while and they do not depend on each other, so they are run at the same time
+			CompletableFuture<DetailsEncryption> nextDetailsEncryption = CompletableFuture.supplyAsync(() -> DetailsEncryption.generate(keyDerivation, password));
+			try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				Future<byte[]> details = executor.submit(() -> AESEncryption.decryptData(keyDerivation, password, ByteBuffer.wrap(encryptedDetails)));
+				key = WalletKey.deserialize(encryptedKey, ByteBuffer.wrap(AESEncryption.decryptData(keyDerivation, password, ByteBuffer.wrap(encryptedKey))), keyDerivation);
+				decryptedDetails = details.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof AEADBadTagException)
+					throw new IncorrectPasswordException();
+				throw new RuntimeException(e.getCause());
 			} catch (AEADBadTagException e) {
 				throw new IncorrectPasswordException();
-			} catch (GeneralSecurityException e) {
+			} catch (GeneralSecurityException | InterruptedException e) {
 				throw new RuntimeException(e);
 			}
 
@@ -227,8 +437,12 @@ public final class Wallet {
 				for (int i = 0; i < addressBookSize; i++) {
 					addressBook.put(din.readUTF(), Address.create(din.readUTF()));
 				}
-				Wallet wallet = new Wallet(path, key, name, myAddresses, detailsEncryptionIv, detailsEncryptionKey);
+				Wallet wallet = new Wallet(path, key, name, myAddresses, nextDetailsEncryption);
 				wallet.addressBook.putAll(addressBook);
+				// Files written by older versions do not have it, so the generated one is saved
+				if (din.available() >= 16)
+					wallet.cacheKey = din.readNBytes(16);
+				else wallet.requestSave();
 				return wallet;
 			}
 		} else throw new UnsupportedOperationException("Unsupported format version " + formatVersion + " (this release only supports " + NEWEST_SUPPORTED_FORMAT + " and older), the file is version " + formatVersion);
@@ -262,7 +476,8 @@ public final class Wallet {
 	public static Wallet load(Path path, String password) throws IncorrectPasswordException {
 		try {
 			Wallet wallet = decrypt(Files.readAllBytes(path), path, password.toCharArray());
-			wallet.saveToFile();
+			// The file is saved again with the new IV once its key has been derived, which does not need to delay the opening
+			wallet.requestSave();
 			return wallet;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
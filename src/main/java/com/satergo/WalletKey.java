@@ -1,7 +1,8 @@
 package com.satergo;
 
-import com.satergo.ergo.ErgoInterface;
 import com.satergo.extra.AESEncryption;
+import com.satergo.extra.KeyDerivation;
+import com.satergo.extra.Scheduler;
 import javafx.scene.control.Alert;
 import org.ergoplatform.ErgoAddressEncoder;
 import org.ergoplatform.P2PKAddress;
@@ -12,6 +13,7 @@ import org.ergoplatform.sdk.wallet.secrets.ExtendedSecretKey;
 
 import javax.crypto.AEADBadTagException;
 import javax.crypto.SecretKey;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
@@ -19,10 +21,10 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * This API is open for extending by third-parties, but consult the wallet-format.md and apply for an ID first.
@@ -40,11 +42,15 @@ public abstract class WalletKey {
 		}
 	}
 
-	public static WalletKey deserialize(byte[] encrypted, ByteBuffer decrypted) {
+	/**
+	 * @param keyDerivation The parameters that the encrypted data was encrypted with
+	 */
+	public static WalletKey deserialize(byte[] encrypted, ByteBuffer decrypted, KeyDerivation keyDerivation) {
 		Type<?> type = types.get(decrypted.getShort() & 0xFFFF);
 		if (type == null) throw new IllegalArgumentException("Unknown wallet type with ID " + decrypted.getShort(0));
 		WalletKey key = type.construct();
 		key.encrypted = encrypted;
+		key.keyDerivation = keyDerivation;
 		key.initCaches(decrypted);
 		return key;
 	}
@@ -84,15 +90,17 @@ public abstract class WalletKey {
 	}
 
 	private byte[] encrypted;
+	private KeyDerivation keyDerivation;
 	protected final Type<?> type;
 
 	private WalletKey(Type<?> type) {
 		this.type = type;
 	}
 
-	protected void initEncryptedData(byte[] encryptedData) {
+	protected void initEncryptedData(byte[] encryptedData, KeyDerivation keyDerivation) {
 		if (this.encrypted != null) throw new IllegalStateException();
 		this.encrypted = encryptedData;
+		this.keyDerivation = keyDerivation;
 	}
 
 	/**
@@ -105,17 +113,128 @@ public abstract class WalletKey {
 	public abstract SignedTransaction sign(BlockchainContext ctx, UnsignedTransaction unsignedTx, Collection<Integer> addressIndexes) throws Failure;
 	public abstract SignedTransaction signReduced(BlockchainContext ctx, ReducedTransaction reducedTx, int baseCost, Collection<Integer> addressIndexes) throws Failure;
 	public abstract Address derivePublicAddress(NetworkType networkType, int index);
+
+	/**
+	 * The result of {@link Signer#signAll}
+	 * @param signedTxs In the same order as the unsigned transactions, null for the ones that could not be signed
+	 * @param errors In the same order as the unsigned transactions, null for the ones that were signed
+	 */
+	public record SignedAll(List<SignedTransaction> signedTxs, List<RuntimeException> errors) {
+		public boolean allSigned() {
+			return !signedTxs.contains(null);
+		}
+
+		/**
+		 * @return The transactions before the first one that could not be signed. When the transactions are chained,
+		 * 	only these can be submitted, because the later ones could spend the outputs of the one that failed.
+		 */
+		public List<SignedTransaction> signedPrefix() {
+			int failed = signedTxs.indexOf(null);
+			return failed == -1 ? signedTxs : signedTxs.subList(0, failed);
+		}
+
+		/**
+		 * @return The error of the first transaction that could not be signed, or null
+		 */
+		public RuntimeException firstError() {
+			return errors.stream().filter(Objects::nonNull).findFirst().orElse(null);
+		}
+	}
+
+	/**
+	 * Signs many transactions after the key has been unlocked, see {@link #unlockForSigning}
+	 */
+	@FunctionalInterface
+	public interface Signer {
+		/**
+		 * @return The results in the same order as the transactions, with an error for each transaction that could not be signed
+		 */
+		SignedAll signAll(BlockchainContext ctx, List<UnsignedTransaction> unsignedTxs);
+	}
+
+	/**
+	 * Unlocks the key for signing many transactions, asking for the password at most once, so this must be called on the JavaFX thread.
+	 * The returned signer is meant to be used on a background thread, together with a context that is created there.
+	 * The default signer signs the transactions one by one with {@link #sign} on the thread of the signer, so key types
+	 * that interact with the user when signing must override this to do it here.
+	 * @throws Failure If the key could not be unlocked, in which case nothing can be signed
+	 */
+	public Signer unlockForSigning(Collection<Integer> addressIndexes) throws Failure {
+		return (ctx, unsignedTxs) -> {
+			SignedTransaction[] signedTxs = new SignedTransaction[unsignedTxs.size()];
+			RuntimeException[] errors = new RuntimeException[unsignedTxs.size()];
+			for (int i = 0; i < signedTxs.length; i++) {
+				try {
+					signedTxs[i] = sign(ctx, unsignedTxs.get(i), addressIndexes);
+				} catch (Failure e) {
+					errors[i] = new RuntimeException(e);
+				} catch (RuntimeException e) {
+					errors[i] = e;
+				}
+			}
+			return new SignedAll(Collections.unmodifiableList(Arrays.asList(signedTxs)), Collections.unmodifiableList(Arrays.asList(errors)));
+		};
+	}
 	public abstract WalletKey changedPassword(char[] currentPassword, char[] newPassword) throws Failure; // it would be cool to call this "recrypt" :)
 
+	/**
+	 * An address of the wallet in the forms that are used for comparing, see {@link #derivedAddress}
+	 * @param string The encoded address
+	 * @param ergoTreeHex The ErgoTree in hex, like it is in the explorer API
+	 */
+	public record DerivedAddress(int index, Address address, String string, String ergoTreeHex) {
+		private static DerivedAddress of(int index, Address address) {
+			return new DerivedAddress(index, address, address.toString(), HexFormat.of().formatHex(address.getErgoAddress().script().bytes()));
+		}
+	}
+
+	private final ConcurrentHashMap<NetworkType, ConcurrentHashMap<Integer, DerivedAddress>> derivedAddresses = new ConcurrentHashMap<>();
+
+	/**
+	 * @return The address from {@link #derivePublicAddress}, which is only derived the first time
+	 */
+	public DerivedAddress derivedAddress(NetworkType networkType, int index) {
+		ConcurrentHashMap<Integer, DerivedAddress> addresses = derivedAddresses.computeIfAbsent(networkType, n -> new ConcurrentHashMap<>());
+		DerivedAddress derived = addresses.get(index);
+		if (derived != null) return derived;
+		// Derived outside of the map so that deriving other indexes at the same time is not blocked
+		derived = DerivedAddress.of(index, derivePublicAddress(networkType, index));
+		DerivedAddress previous = addresses.putIfAbsent(index, derived);
+		return previous != null ? previous : derived;
+	}
+
+	/**
+	 * Derives the addresses that are not cached yet in parallel
+	 * @return The addresses in the same order as the indexes
+	 */
+	public List<DerivedAddress> derivedAddresses(NetworkType networkType, Collection<Integer> indexes) {
+		return List.copyOf(indexes).parallelStream().map(index -> derivedAddress(networkType, index)).toList();
+	}
+
+	/**
+	 * @param to exclusive
+	 */
+	public List<DerivedAddress> derivedAddresses(NetworkType networkType, int from, int to) {
+		return derivedAddresses(networkType, IntStream.range(from, to).boxed().toList());
+	}
+
+	/**
+	 * Removes the cached address of the index for all network types
+	 */
+	public void forgetDerivedAddress(int index) {
+		derivedAddresses.values().forEach(addresses -> addresses.remove(index));
+	}
+
 	public byte[] copyIv() { return Arrays.copyOf(encrypted, 12); }
 	public byte[] encrypted() { return encrypted; }
+	public KeyDerivation keyDerivation() { return keyDerivation; }
 
 	/**
 	 * The key is encrypted and embedded into the wallet file
 	 * The default behavior of this class is:
 	 * - keep extended public key in memory for address derivations (as such, never throws Failure for derivePublicAddress)
 	 * - ask user for password when needed
-	 * - keep the secret key cached in memory for 1 minute since last use
+	 * - keep the secret key and the last used address secrets cached in memory for 1 minute since last use
 	 */
 	public static class Local extends WalletKey {
 		private static final int ID = 0;
@@ -136,7 +255,8 @@ public abstract class WalletKey {
 
 		private static void checkFormat(Mnemonic mnemonic) {
 			if (!String.join(" ", mnemonic.getPhrase().toStringUnsecure().split(" ")).equals(mnemonic.getPhrase().toStringUnsecure())) {
-				Utils.alert(Alert.AlertType.ERROR, Main.lang("invalidSeedFormatAlert"));
+				// The key can be created in the background
+				Utils.runLaterOrNow(() -> Utils.alert(Alert.AlertType.ERROR, Main.lang("invalidSeedFormatAlert")));
 			}
 		}
 
@@ -153,7 +273,7 @@ public abstract class WalletKey {
 			parentExtPubKey = ((ExtendedSecretKey) rootSecret.derive(DerivationPath.fromEncoded("m/44'/429'/0'/0").get())).publicKey();
 		}
 
-		public static Local create(boolean nonstandard, Mnemonic mnemonic, char[] password) {
+		public static Local create(boolean nonstandard, Mnemonic mnemonic, char[] password, KeyDerivation keyDerivation) {
 			try {
 				checkFormat(mnemonic);
 				Local key = new Local();
@@ -170,7 +290,7 @@ public abstract class WalletKey {
 						.put(mnPhraseBytes)
 						.putShort((short) mnPasswordBytes.length)
 						.put(mnPasswordBytes);
-				key.initEncryptedData(AESEncryption.encryptData(iv, AESEncryption.generateSecretKey(password, iv), buffer.array()));
+				key.initEncryptedData(AESEncryption.encryptData(iv, keyDerivation.generateSecretKey(password, iv), buffer.array()), keyDerivation);
 				key.initParentExtPubKey(mnemonic);
 				return key;
 			} catch (GeneralSecurityException e) {
@@ -184,7 +304,7 @@ public abstract class WalletKey {
 				String password = passwordSupplier.get();
 				if (password == null) throw new Failure();
 				try {
-					secretKey = AESEncryption.generateSecretKey(password.toCharArray(), copyIv());
+					secretKey = keyDerivation().generateSecretKey(password.toCharArray(), copyIv());
 				} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
 					throw new RuntimeException(e);
 				}
@@ -201,7 +321,7 @@ public abstract class WalletKey {
 				}
 				return readMnemonic(buffer);
 			} catch (AEADBadTagException e) {
-				Utils.alertIncorrectPassword();
+				Utils.runLaterOrNow(Utils::alertIncorrectPassword);
 				throw new Failure();
 			} catch (GeneralSecurityException e) {
 				throw new RuntimeException(e);
@@ -222,28 +342,105 @@ public abstract class WalletKey {
 			return Mnemonic.create(mnPhraseChars, mnPasswordChars);
 		}
 
-		private ScheduledExecutorService scheduler;
+		private ScheduledFuture<?> cacheTimeout;
 		private Caching caching = Caching.TIMED;
 		private final Duration cacheDuration = Duration.ofMinutes(1);
 
 		public void setCaching(Caching caching) {
 			if (this.caching == caching) return;
 			if (caching == Caching.OFF || caching == Caching.TIMED) {
-				if (scheduler != null)
-					scheduler.shutdown();
-				cachedKey = null;
+				if (cacheTimeout != null)
+					cacheTimeout.cancel(false);
+				clearCache();
 			}
 			this.caching = caching;
 		}
 
+		private void clearCache() {
+			cachedKey = null;
+			cachedSecrets = null;
+		}
+
+		/**
+		 * The secrets of the master key and of the addresses, which a prover is built from for each context
+		 */
+		private record ProverSecrets(Set<Integer> addressIndexes, List<BigInteger> dLogSecrets) {
+			private static ProverSecrets derive(boolean nonstandard, Mnemonic mnemonic, Set<Integer> addressIndexes) {
+				ExtendedSecretKey rootSecret = ExtendedSecretKey.deriveMasterKey(mnemonic.toSeed(), nonstandard);
+				ExtendedSecretKey parent = (ExtendedSecretKey) rootSecret.derive(DerivationPath.fromEncoded("m/44'/429'/0'/0").get());
+				ArrayList<BigInteger> dLogSecrets = new ArrayList<>();
+				// Like a prover built with the mnemonic, which also has the secret of the master key
+				dLogSecrets.add(rootSecret.privateInput().w());
+				for (int index : addressIndexes) {
+					dLogSecrets.add(parent.child(index).privateInput().w());
+				}
+				return new ProverSecrets(addressIndexes, List.copyOf(dLogSecrets));
+			}
+
+			private ErgoProver prover(BlockchainContext ctx) {
+				ErgoProverBuilder builder = ctx.newProverBuilder();
+				dLogSecrets.forEach(builder::withDLogSecret);
+				return builder.build();
+			}
+		}
+
+		private ProverSecrets cachedSecrets;
+
+		/**
+		 * Deriving the seed and the secrets of the addresses takes a while, so they are cached like the secret key
+		 * and only the prover is built again for each context
+		 */
+		private ProverSecrets secrets(Collection<Integer> addressIndexes) throws Failure {
+			Set<Integer> indexes = Set.copyOf(addressIndexes);
+			ProverSecrets secrets = cachedSecrets;
+			if (secrets != null && cachedKey != null && secrets.addressIndexes().equals(indexes)) {
+				if (caching == Caching.TIMED)
+					restartCacheTimeout();
+				return secrets;
+			}
+			secrets = ProverSecrets.derive(nonstandard, getMnemonic(), indexes);
+			if (caching != Caching.OFF)
+				cachedSecrets = secrets;
+			return secrets;
+		}
+
+		private ErgoProver prover(BlockchainContext ctx, Collection<Integer> addressIndexes) throws Failure {
+			return secrets(addressIndexes).prover(ctx);
+		}
+
 		@Override
 		public SignedTransaction sign(BlockchainContext ctx, UnsignedTransaction unsignedTx, Collection<Integer> addressIndexes) throws Failure {
-			return ErgoInterface.newWithMnemonicProver(ctx, nonstandard, getMnemonic(), addressIndexes).sign(unsignedTx);
+			return prover(ctx, addressIndexes).sign(unsignedTx);
 		}
 
 		@Override
 		public SignedTransaction signReduced(BlockchainContext ctx, ReducedTransaction reducedTx, int baseCost, Collection<Integer> addressIndexes) throws Failure {
-			return ErgoInterface.newWithMnemonicProver(ctx, nonstandard, getMnemonic(), addressIndexes).signReduced(reducedTx, baseCost);
+			return prover(ctx, addressIndexes).signReduced(reducedTx, baseCost);
+		}
+
+		/**
+		 * The key is unlocked and the secrets are derived on this thread. The signer proves the transactions in parallel with
+		 * one prover for each worker, because a prover is not known to be safe to use from several threads at once.
+		 */
+		@Override
+		public Signer unlockForSigning(Collection<Integer> addressIndexes) throws Failure {
+			ProverSecrets secrets = secrets(addressIndexes);
+			return (ctx, unsignedTxs) -> {
+				SignedTransaction[] signedTxs = new SignedTransaction[unsignedTxs.size()];
+				RuntimeException[] errors = new RuntimeException[unsignedTxs.size()];
+				int workers = Math.min(Runtime.getRuntime().availableProcessors(), signedTxs.length);
+				IntStream.range(0, workers).parallel().forEach(worker -> {
+					ErgoProver prover = secrets.prover(ctx);
+					for (int i = worker; i < signedTxs.length; i += workers) {
+						try {
+							signedTxs[i] = prover.sign(unsignedTxs.get(i));
+						} catch (RuntimeException e) {
+							errors[i] = e;
+						}
+					}
+				});
+				return new SignedAll(Collections.unmodifiableList(Arrays.asList(signedTxs)), Collections.unmodifiableList(Arrays.asList(errors)));
+			};
 		}
 
 		@Override
@@ -253,14 +450,14 @@ public abstract class WalletKey {
 
 		@Override
 		public WalletKey changedPassword(char[] currentPassword, char[] newPassword) throws Failure {
-			return create(nonstandard, getMnemonic(() -> new String(currentPassword)), newPassword);
+			// The calibrated parameters are used, which also moves wallets from the parameters of format version 1 to them
+			return create(nonstandard, getMnemonic(() -> new String(currentPassword)), newPassword, KeyDerivation.calibrated().join());
 		}
 
 		private void restartCacheTimeout() {
-			if (scheduler != null)
-				scheduler.shutdown();
-			scheduler = Executors.newSingleThreadScheduledExecutor();
-			scheduler.schedule(() -> cachedKey = null, cacheDuration.toMillis(), TimeUnit.MILLISECONDS);
+			if (cacheTimeout != null)
+				cacheTimeout.cancel(false);
+			cacheTimeout = Scheduler.get().scheduleOnce("Key cache timeout", cacheDuration, this::clearCache);
 		}
 	}
 }
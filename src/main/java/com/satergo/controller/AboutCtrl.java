@@ -88,7 +88,7 @@ public class AboutCtrl implements Initializable, WalletTab {
 		if (amountFullErg == null) return;
 		try {
 			Wallet wallet = Main.get().getWallet();
-			UnsignedTransaction unsignedTx = ErgoInterface.createUnsignedTransaction(Utils.createErgoClient(),
+			UnsignedTransaction unsignedTx = ErgoInterface.createUnsignedTransaction(Utils.createErgoClient(), wallet.unspentBoxes(),
 					wallet.addressStream().toList(),
 					DONATION_ADDRESS, ErgoInterface.toNanoErg(amountFullErg), Parameters.MinFee, Main.get().getWallet().publicAddress(0));
 			String txId = wallet.transact(Utils.createErgoClient().execute(ctx -> {
@@ -11,15 +11,21 @@ import com.satergo.ergo.ErgoURI;
 import com.satergo.ergo.TokenBalance;
 import com.satergo.extra.ImageConversion;
 import com.satergo.extra.IncorrectPasswordException;
+import com.satergo.extra.KeyDerivation;
+import com.satergo.extra.SimpleTask;
+import com.satergo.extra.TokenList;
 import com.satergo.extra.market.MarketData;
+import com.satergo.extra.market.PriceCurrency;
 import com.satergo.extra.dialog.MoveStyle;
 import com.satergo.extra.dialog.SatPromptDialog;
 import com.satergo.extra.dialog.SatTextInputDialog;
 import com.satergo.extra.dialog.SatVoidDialog;
 import javafx.application.Platform;
-import javafx.beans.InvalidationListener;
 import javafx.beans.binding.Bindings;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.collections.MapChangeListener;
+import javafx.collections.WeakMapChangeListener;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -32,6 +38,8 @@ import javafx.scene.image.WritableImage;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
@@ -40,6 +48,9 @@ import javafx.util.StringConverter;
 import org.ergoplatform.appkit.Address;
 import org.ergoplatform.appkit.Mnemonic;
 import org.ergoplatform.sdk.ErgoId;
+import org.fxmisc.flowless.Cell;
+import org.fxmisc.flowless.VirtualFlow;
+import org.fxmisc.flowless.VirtualizedScrollPane;
 
 import javax.imageio.ImageIO;
 import java.awt.image.RenderedImage;
@@ -48,15 +59,15 @@ import java.math.BigDecimal;
 import java.net.URL;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
-import java.util.Map;
-import java.util.Objects;
-import java.util.ResourceBundle;
+import java.util.*;
 import java.util.function.Consumer;
 
 public class AccountCtrl implements Initializable, WalletTab {
 
 	@FXML private Label walletName, totalBalanceLabel, totalBalance;
 	@FXML private VBox tokens;
+	@FXML private TextField tokenSearch;
+	@FXML private ComboBox<TokenList.Order> tokenOrder;
 	@FXML private VBox addresses;
 
 	@FXML private ImageView qrCodeImage;
@@ -113,6 +124,7 @@ public class AccountCtrl implements Initializable, WalletTab {
 		Utils.initDialog(dialog, Main.get().stage(), MoveStyle.FOLLOW_OWNER);
 		dialog.setTitle(Main.lang("programName"));
 		dialog.setHeaderText(Main.lang("changePassword"));
+		KeyDerivation.calibrated();
 
 		// Set the button types.
 		ButtonType changeType = new ButtonType(Main.lang("change"), ButtonBar.ButtonData.OK_DONE);
@@ -152,11 +164,15 @@ public class AccountCtrl implements Initializable, WalletTab {
 
 		Pair<String, String> result = dialog.showForResult().orElse(null);
 		if (result == null) return;
-		try {
-			Main.get().getWallet().changePassword(result.getKey().toCharArray(), result.getValue().toCharArray());
-		} catch (IncorrectPasswordException ex) {
-			Utils.alertIncorrectPassword();
-		}
+		Wallet wallet = Main.get().getWallet();
+		new SimpleTask<>(() -> {
+			wallet.changePassword(result.getKey().toCharArray(), result.getValue().toCharArray());
+			return null;
+		}).onFail(ex -> {
+			// an incorrect password has already been told to the user
+			if (!(ex instanceof IncorrectPasswordException))
+				Utils.alertUnexpectedException(ex);
+		}).newThread();
 	}
 
 	@FXML
@@ -270,23 +286,40 @@ public class AccountCtrl implements Initializable, WalletTab {
 	}
 
 	private static class TokenLine extends BorderPane {
-		private final TokenBalance token;
+		private TokenBalance token;
 		@FXML private Label name, symbol, amount, priceInErg, priceInFiat;
 		@FXML private ImageView icon;
 		@FXML private Button copyId;
 		@FXML private Node priceBox;
 
+		private record ShownPrice(BigDecimal unitPriceInErg, BigDecimal ergValue, PriceCurrency currency, long amount) {}
+		private ShownPrice shownPrice;
+
 		public TokenLine(TokenBalance token) {
-			this.token = token;
 			Load.thisFxml(this, "/line/account-token.fxml");
-			this.name.setText(token.name() == null ? Main.lang("unnamed_parentheses") : token.name());
-			this.icon.setImage(Utils.tokenIcon36x36(ErgoId.create(token.id())));
-			this.amount.setText(FormatNumber.tokenExact(token));
 			this.priceBox.visibleProperty().bind(Main.programData().showPrice.and(Bindings.createBooleanBinding(() -> !priceInErg.getText().isEmpty(), priceInErg.textProperty())));
+			setToken(token);
+		}
+
+		/**
+		 * Only the labels of what differs from the previous token are updated, as lines are reused for other tokens when scrolling
+		 */
+		public void setToken(TokenBalance token) {
+			TokenBalance previous = this.token;
+			this.token = token;
+			if (previous == null || !previous.id().equals(token.id()))
+				this.icon.setImage(Utils.tokenIcon36x36(ErgoId.create(token.id())));
+			if (previous == null || !Objects.equals(previous.name(), token.name()))
+				this.name.setText(token.name() == null ? Main.lang("unnamed_parentheses") : token.name());
+			if (previous == null || previous.amount() != token.amount() || previous.decimals() != token.decimals())
+				this.amount.setText(FormatNumber.tokenExact(token));
 		}
 
 		public void showPrice(MarketData market) {
 			BigDecimal oneUnitPriceInErg = market.ergPriceOfToken(token.id());
+			ShownPrice price = new ShownPrice(oneUnitPriceInErg, market.ergValue.get(), Main.programData().priceCurrency.get(), token.amount());
+			if (price.equals(shownPrice)) return;
+			shownPrice = price;
 			if (oneUnitPriceInErg == null || market.ergValue.get() == null) {
 				this.priceInErg.setText("");
 				this.priceInFiat.setText("");
@@ -304,6 +337,30 @@ public class AccountCtrl implements Initializable, WalletTab {
 		}
 	}
 
+	private final TokenList tokenList = new TokenList();
+	// The lines that currently have a cell in the flow, their prices are updated when the token prices change
+	private final Set<TokenLine> tokenLines = new HashSet<>();
+	// The market data and the settings outlive this page, so they only hold weak references to these
+	private MapChangeListener<String, BigDecimal> tokenPriceListener;
+	private ChangeListener<Object> priceListener;
+
+	private Cell<TokenBalance, Node> createTokenCell(TokenBalance token) {
+		TokenLine tokenLine = new TokenLine(token);
+		tokenLine.showPrice(Main.get().market);
+		tokenLines.add(tokenLine);
+		StackPane node = new StackPane(tokenLine);
+		node.setPadding(new Insets(0, 0, 5, 0));
+		return new Cell<>() {
+			@Override public Node getNode() { return node; }
+			@Override public boolean isReusable() { return true; }
+			@Override public void updateItem(TokenBalance item) {
+				tokenLine.setToken(item);
+				tokenLine.showPrice(Main.get().market);
+			}
+			@Override public void dispose() { tokenLines.remove(tokenLine); }
+		};
+	}
+
 	private void updateAddresses() {
 		addresses.getChildren().clear();
 		Main.get().getWallet().myAddresses.forEach((index, name) -> {
@@ -313,6 +370,12 @@ public class AccountCtrl implements Initializable, WalletTab {
 		});
 	}
 
+	private void showAllPrices() {
+		for (TokenLine tokenLine : tokenLines) {
+			tokenLine.showPrice(Main.get().market);
+		}
+	}
+
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
 		walletName.textProperty().bind(Main.get().getWallet().name);
@@ -322,18 +385,26 @@ public class AccountCtrl implements Initializable, WalletTab {
 		Main.get().getWallet().lastKnownBalance.subscribe(balance -> {
 			if (balance == null) return;
 			totalBalance.setText(FormatNumber.ergAllDecimals(ErgoInterface.toFullErg(balance.confirmed())) + " ERG");
-			tokens.getChildren().clear();
-			for (TokenBalance token : Main.get().getWallet().lastKnownBalance.get().confirmedTokens()) {
-				TokenLine tokenLine = new TokenLine(token);
-				tokenLine.showPrice(Main.get().market);
-				tokens.getChildren().add(tokenLine);
-			}
+			tokenList.setAll(balance.confirmedTokens());
 		});
-		Main.get().market.tokenPrices.addListener((InvalidationListener) obs -> {
-			for (Node child : tokens.getChildren()) {
-				((TokenLine) child).showPrice(Main.get().market);
+		tokenSearch.textProperty().bindBidirectional(tokenList.search);
+		tokenOrder.getItems().setAll(TokenList.Order.values());
+		tokenOrder.setConverter(TokenList.Order.TO_NAME_CONVERTER);
+		tokenOrder.valueProperty().bindBidirectional(tokenList.order);
+		VirtualizedScrollPane<VirtualFlow<TokenBalance, Cell<TokenBalance, Node>>> tokenScroll = new VirtualizedScrollPane<>(VirtualFlow.createVertical(tokenList.shown(), this::createTokenCell));
+		VBox.setVgrow(tokenScroll, Priority.ALWAYS);
+		tokens.getChildren().add(tokenScroll);
+		tokenPriceListener = change -> {
+			for (TokenLine tokenLine : tokenLines) {
+				if (tokenLine.token.id().equals(change.getKey()))
+					tokenLine.showPrice(Main.get().market);
 			}
-		});
+		};
+		Main.get().market.tokenPrices.addListener(new WeakMapChangeListener<>(tokenPriceListener));
+		// The token prices can arrive before the ERG price, and the fiat values also change with it and the currency
+		priceListener = (observable, oldValue, newValue) -> showAllPrices();
+		Main.get().market.ergValue.addListener(new WeakChangeListener<>(priceListener));
+		Main.programData().priceCurrency.addListener(new WeakChangeListener<>(priceListener));
 		updateAddresses();
 		qrCodeAddress.getItems().addAll(Main.get().getWallet().myAddresses.keySet());
 		qrCodeAddress.setValue(0);
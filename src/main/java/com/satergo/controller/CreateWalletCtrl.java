@@ -4,6 +4,7 @@ import com.satergo.Load;
 import com.satergo.Main;
 import com.satergo.Utils;
 import com.satergo.ergo.ErgoInterface;
+import com.satergo.extra.KeyDerivation;
 import com.satergo.extra.ToggleSwitch;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -69,6 +70,7 @@ public class CreateWalletCtrl implements SetupPage.WithoutExtra, SetupPage.Custo
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
+		KeyDerivation.calibrated();
 		extendedSeedPassphrase.setOnKeyPressed(e -> {
 			if (e.getCode() == KeyCode.ESCAPE) {
 				root.requestFocus();
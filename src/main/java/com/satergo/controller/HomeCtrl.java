@@ -173,7 +173,7 @@ public class HomeCtrl implements WalletTab, Initializable {
 			}
 			List<Address> inputAddresses = candidates.stream().map(Main.get().getWallet()::publicAddress).toList();
 			long ergFinal = erg;
-			new SimpleTask<>(() -> ErgoInterface.createUnsignedTransaction(ctx, inputAddresses, outBoxes, ergFinal, List.copyOf(tokens.values()), fee.get(), change))
+			new SimpleTask<>(() -> ErgoInterface.createUnsignedTransaction(ctx, Main.get().getWallet().unspentBoxes(), inputAddresses, outBoxes, ergFinal, List.copyOf(tokens.values()), fee.get(), change))
 					.onSuccess(unsignedTx -> {
 						try {
 							SignedTransaction signedTx = Main.get().getWallet().key().sign(ctx, unsignedTx, candidates);
@@ -4,6 +4,7 @@ import com.satergo.Main;
 import com.satergo.Utils;
 import com.satergo.Wallet;
 import com.satergo.extra.SeedPhraseOrderVerify;
+import com.satergo.extra.SimpleTask;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -58,8 +59,15 @@ public class RepeatSeedCtrl implements Initializable, SetupPage.WithoutExtra {
 		} else {
 			Path path = Utils.fileChooserSave(Main.get().stage(), Main.lang("locationToSaveTo"), Utils.getLastWalletDir(), walletName + "." + Wallet.FILE_EXTENSION, Wallet.extensionFilter());
 			if (path == null) return;
-			Main.get().setWallet(Wallet.create(path, mnemonic, walletName, password.getData()));
-			Main.get().displayWalletPage();
+			root.setDisable(true);
+			new SimpleTask<>(() -> Wallet.create(path, mnemonic, walletName, password.getData()))
+					.onSuccess(wallet -> {
+						Main.get().setWallet(wallet);
+						Main.get().displayWalletPage();
+					}).onFail(ex -> {
+						root.setDisable(false);
+						Utils.alertUnexpectedException(ex);
+					}).newThread();
 		}
 	}
 
@@ -1,11 +1,15 @@
 package com.satergo.controller;
 
 import com.satergo.*;
+import com.satergo.ergo.AddressDiscovery;
 import com.satergo.ergo.ErgoInterface;
+import com.satergo.extra.KeyDerivation;
+import com.satergo.extra.SimpleTask;
 import com.satergo.extra.dialog.MoveStyle;
 import com.satergo.extra.dialog.SatPromptDialog;
 import com.satergo.extra.dialog.SatVoidDialog;
 import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -18,6 +22,7 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Screen;
 import org.ergoplatform.appkit.Address;
 import org.ergoplatform.appkit.Mnemonic;
+import org.ergoplatform.appkit.NetworkType;
 import org.ergoplatform.explorer.client.DefaultApi;
 import org.ergoplatform.sdk.SecretString;
 import org.ergoplatform.wallet.mnemonic.WordList;
@@ -28,8 +33,8 @@ import scala.collection.JavaConverters;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.stream.Collectors;
@@ -46,6 +51,7 @@ public class RestoreFromSeedCtrl implements SetupPage.WithoutExtra, Initializabl
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
+		KeyDerivation.calibrated();
 		WordList wordList = WordList.load("english").get();
 		allMnemonicWords = JavaConverters.seqAsJavaList(wordList.words());
 		seedPhrase.textProperty().addListener((observable, oldValue, newValue) -> {
@@ -167,30 +173,41 @@ public class RestoreFromSeedCtrl implements SetupPage.WithoutExtra, Initializabl
 			}
 		}
 
-		Wallet wallet = Wallet.create(path, mnemonic, walletName.getText(), walletPassword.getText().toCharArray(), nonstandardDerivation);
-
-		// Search public addresses for transactions. If 2 unused addresses are found in a row, the search is cancelled.
-		// This differs from the BIP44 standard which defines the maximum gap size as 20, but that could take too much time with the current setup.
-		// TODO could be parallelized
-		ArrayList<Integer> foundAddresses = new ArrayList<>();
-		for (int index = 1, unused = 0;; index++) {
-			try {
-				Address address = wallet.publicAddress(index);
-				boolean exists = api.getApiV1AddressesP1Transactions(address.toString(), 0, 1, true).execute().body().getTotal() > 0;
-				if (!exists) {
-					unused++;
-					if (unused == 2) break;
-				} else foundAddresses.add(index);
-			} catch (IOException ex) {
-				throw new RuntimeException(ex);
-			}
-		}
-		for (int foundAddress : foundAddresses) {
-			wallet.myAddresses.put(foundAddress, Main.lang("restoredAddress_d").formatted(foundAddress));
-		}
-
-		Main.get().setWallet(wallet);
-		Main.get().displayWalletPage();
+		SatVoidDialog loading = new SatVoidDialog();
+		Utils.initDialog(loading, root.getScene().getWindow(), MoveStyle.FOLLOW_OWNER);
+		loading.setHeaderText(Main.lang("restoringWallet"));
+		loading.getDialogPane().setContent(new ProgressIndicator());
+		SimpleBooleanProperty canBeClosed = new SimpleBooleanProperty(false);
+		loading.setOnCloseRequest(event -> {
+			if (!canBeClosed.get())
+				event.consume();
+		});
+		loading.show();
+		String name = walletName.getText();
+		char[] password = walletPassword.getText().toCharArray();
+		boolean nonstandard = nonstandardDerivation;
+		NetworkType networkType = Main.programData().nodeNetworkType.get();
+		new SimpleTask<>(() -> {
+			// Search public addresses for transactions, until as many unused addresses in a row as the gap limit have been found
+			return Wallet.create(path, mnemonic, name, password, nonstandard, key -> {
+				List<Integer> foundAddresses = new AddressDiscovery(networkType)
+						.discover(key, 1, SystemProperties.addressGapLimit());
+				LinkedHashMap<Integer, String> restoredAddresses = new LinkedHashMap<>();
+				for (int foundAddress : foundAddresses) {
+					restoredAddresses.put(foundAddress, Main.lang("restoredAddress_d").formatted(foundAddress));
+				}
+				return restoredAddresses;
+			});
+		}).onSuccess(wallet -> {
+			canBeClosed.set(true);
+			loading.close();
+			Main.get().setWallet(wallet);
+			Main.get().displayWalletPage();
+		}).onFail(ex -> {
+			canBeClosed.set(true);
+			loading.close();
+			Utils.alertUnexpectedException(ex);
+		}).newThread();
 	}
 
 	@FXML private Hyperlink showExtendedSeedPassphrase;
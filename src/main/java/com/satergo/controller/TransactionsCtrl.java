@@ -4,22 +4,43 @@ import com.satergo.Main;
 import com.satergo.Utils;
 import com.satergo.Wallet;
 import com.satergo.ergo.ErgoInterface;
+import com.satergo.ergo.TransactionHistoryStore;
+import com.satergo.ergo.TransactionSummary;
 import com.satergo.extra.SimpleTask;
 import com.satergo.extra.TransactionCell;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.layout.VBox;
+import javafx.scene.layout.StackPane;
 import org.ergoplatform.appkit.Address;
 import org.ergoplatform.explorer.client.DefaultApi;
 import org.ergoplatform.explorer.client.model.TransactionInfo;
+import org.fxmisc.flowless.Cell;
+import org.fxmisc.flowless.VirtualFlow;
+import org.fxmisc.flowless.VirtualizedScrollPane;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+import javax.crypto.SecretKey;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class TransactionsCtrl implements Initializable, WalletTab {
@@ -28,8 +49,17 @@ public class TransactionsCtrl implements Initializable, WalletTab {
 			emptyHistory = Utils.accessibleLabel(new Label(Main.lang("emptyTransactionHistory")));
 
 	@FXML private Button refreshButton;
-	@FXML private VBox finished;
+	@FXML private StackPane finished;
 	private DefaultApi api;
+	private volatile TransactionHistoryStore history;
+	private SimpleTask<?> backfillTask;
+
+	// Only the visible transactions have cells, which are reused when scrolling
+	private final ObservableList<TransactionSummary> transactions = FXCollections.observableArrayList();
+	private final Set<String> expandedIds = new HashSet<>();
+	private VirtualizedScrollPane<VirtualFlow<TransactionSummary, Cell<TransactionSummary, Node>>> transactionsScroll;
+	private Set<Address> flowAddresses;
+	private final ExecutorService detailsLoader = Executors.newVirtualThreadPerTaskExecutor();
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
@@ -38,47 +68,169 @@ public class TransactionsCtrl implements Initializable, WalletTab {
 				.baseUrl(ErgoInterface.getExplorerUrl(Main.programData().nodeNetworkType.get()))
 				.addConverterFactory(GsonConverterFactory.create())
 				.build().create(DefaultApi.class);
-		fetchHistory();
+		Wallet wallet = Main.get().getWallet();
+		Path historyFile = historyFile(wallet), legacyHistoryFile = legacyHistoryFile(wallet);
+		SecretKey cacheKey = wallet.cacheKey();
+		List<Address> addresses = wallet.addressStream().toList();
+		new SimpleTask<>(() -> {
+			Files.deleteIfExists(legacyHistoryFile);
+			history = TransactionHistoryStore.load(historyFile, cacheKey);
+			return history.summaries(addresses);
+		}).onSuccess(stored -> {
+			// Show the stored history straight away, the newer transactions are added when they have been fetched
+			if (!stored.isEmpty())
+				render(stored);
+			fetchHistory();
+		}).onFail(Utils::alertUnexpectedException)
+				.newThread();
+	}
+
+	/**
+	 * The history file is named after the cache key of the wallet, so that it is shared between copies of the same wallet file
+	 * and its name does not reveal an address
+	 */
+	private static Path historyFile(Wallet wallet) {
+		return historyDirectory().resolve(hashedName(wallet.cacheKey().getEncoded()) + ".dat");
+	}
+
+	/**
+	 * Older versions stored the history unencrypted in a file named after the master address
+	 */
+	private static Path legacyHistoryFile(Wallet wallet) {
+		return historyDirectory().resolve(hashedName(wallet.publicAddress(0).toString().getBytes(StandardCharsets.UTF_8)) + ".json.gz");
+	}
+
+	private static Path historyDirectory() {
+		return Utils.settingsDir().resolve("transaction-history");
 	}
 
+	private static String hashedName(byte[] data) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+			return HexFormat.of().formatHex(hash, 0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Fetches the transactions that are newer than the stored ones, then continues fetching older history in the background
+	 */
 	public SimpleTask<?> fetchHistory() {
-		SimpleTask<List<TransactionInfo>> task = new SimpleTask<>(() -> {
-			return Main.get().getWallet().addressStream().parallel()
-					.map(address -> {
-						try {
-							return api.getApiV1AddressesP1Transactions(address.toString(), 0, 500, false)
-									.execute()
-									.body()
-									.getItems();
-						} catch (IOException e) {
-							throw new RuntimeException(e);
-						}
-					}).flatMap(Collection::stream)
-					// sort newest to oldest
-					.sorted(Comparator.comparingLong(TransactionInfo::getTimestamp).reversed())
-					// since all addresses are checked, there can be multiple entries of a transaction
-					.distinct()
-					.toList();
-		}).onSuccess(transactions -> {
-			finished.getChildren().clear();
-			Wallet wallet = Main.get().getWallet();
-			// the wallet could have been closed before the transactions loaded
-			if (wallet == null) return;
-			if (transactions.isEmpty()) {
-				finished.getChildren().setAll(emptyHistory);
-				return;
-			}
-			Set<Address> myAddresses = wallet.addressStream().collect(Collectors.toUnmodifiableSet());
-			for (TransactionInfo tx : transactions) {
-				finished.getChildren().add(new TransactionCell(tx, myAddresses));
+		List<Address> addresses = Main.get().getWallet().addressStream().toList();
+		SimpleTask<List<TransactionSummary>> task = new SimpleTask<>(() -> {
+			try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				List<Future<Boolean>> futures = new ArrayList<>();
+				for (Address address : addresses) {
+					futures.add(executor.submit(() -> history.syncNewer(api, address)));
+				}
+				for (Future<Boolean> future : futures) {
+					future.get();
+				}
 			}
+			history.save();
+			return history.summaries(addresses);
+		}).onSuccess(transactions -> {
+			render(transactions);
+			startBackfill(addresses);
 		});
 		task.newThread();
 		return task;
 	}
 
+	private void startBackfill(List<Address> addresses) {
+		if (backfillTask != null && backfillTask.isRunning())
+			return;
+		Wallet wallet = Main.get().getWallet();
+		TransactionHistoryStore history = this.history;
+		backfillTask = new SimpleTask<>(() -> {
+			List<Address> remaining = new ArrayList<>(addresses);
+			remaining.removeIf(history::isComplete);
+			while (!remaining.isEmpty()) {
+				// stop if the wallet has been closed or another one has been opened, or the page has been closed
+				if (Main.get().getWallet() != wallet || Thread.currentThread().isInterrupted()) {
+					history.save();
+					return null;
+				}
+				Iterator<Address> iterator = remaining.iterator();
+				while (iterator.hasNext()) {
+					if (history.backfill(api, iterator.next()))
+						iterator.remove();
+				}
+				List<TransactionSummary> transactions = history.summaries(addresses);
+				Platform.runLater(() -> render(transactions));
+			}
+			history.save();
+			return null;
+		});
+		backfillTask.onFail(t -> {
+			if (!(t instanceof IOException)) Utils.alertUnexpectedException(t);
+		});
+		backfillTask.newThread();
+	}
+
+	/**
+	 * Called when the wallet page is closed
+	 */
+	public void stopBackfill() {
+		if (backfillTask != null)
+			backfillTask.cancel();
+	}
+
+	/**
+	 * The inputs and outputs are not stored, so they are downloaded when a transaction is expanded
+	 */
+	private CompletableFuture<TransactionInfo> loadDetails(String id) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return TransactionHistoryStore.fetchTransaction(api, id);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, detailsLoader);
+	}
+
+	private void render(List<TransactionSummary> transactions) {
+		Wallet wallet = Main.get().getWallet();
+		// the wallet could have been closed before the transactions loaded
+		if (wallet == null) return;
+		if (transactions.isEmpty()) {
+			finished.getChildren().setAll(emptyHistory);
+			return;
+		}
+		Set<Address> myAddresses = wallet.addressStream().collect(Collectors.toUnmodifiableSet());
+		// The cells know which addresses belong to the wallet, so they are recreated if that changes
+		if (transactionsScroll == null || !myAddresses.equals(flowAddresses)) {
+			flowAddresses = myAddresses;
+			transactionsScroll = new VirtualizedScrollPane<>(VirtualFlow.createVertical(this.transactions, tx -> createCell(tx, myAddresses)));
+		}
+		this.transactions.setAll(transactions);
+		finished.getChildren().setAll(transactionsScroll);
+	}
+
+	private Cell<TransactionSummary, Node> createCell(TransactionSummary tx, Set<Address> myAddresses) {
+		TransactionCell transactionCell = new TransactionCell(myAddresses, expandedIds, this::loadDetails);
+		transactionCell.setTransaction(tx);
+		StackPane node = new StackPane(transactionCell);
+		node.setPadding(new Insets(0, 0, 10, 0));
+		return new Cell<>() {
+			@Override public Node getNode() { return node; }
+			@Override public boolean isReusable() { return true; }
+			@Override public void updateItem(TransactionSummary item) { transactionCell.setTransaction(item); }
+		};
+	}
+
+	/**
+	 * Fetches the new transactions while the current ones stay shown
+	 */
+	public void update() {
+		if (history == null) return;
+		fetchHistory();
+	}
+
 	@FXML
 	public void refresh() {
+		if (history == null) return;
 		finished.getChildren().setAll(loadingLabel);
 		refreshButton.disableProperty().bind(fetchHistory().runningProperty());
 	}
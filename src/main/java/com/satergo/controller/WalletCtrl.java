@@ -2,14 +2,19 @@ package com.satergo.controller;
 
 import com.satergo.*;
 import com.satergo.ergo.Balance;
+import com.satergo.ergo.TokenInfoCache;
+import com.satergo.ergo.UnspentBoxCache;
+import com.satergo.ergo.WalletChangeDetector;
 import com.satergo.ergopay.ErgoPay;
 import com.satergo.ergopay.ErgoPayPrompt;
 import com.satergo.ergopay.ErgoPayURI;
 import com.satergo.ergo.ErgoURI;
+import com.satergo.extra.Scheduler;
 import com.satergo.extra.SimpleTask;
 import com.satergo.extra.dialog.MoveStyle;
 import com.satergo.extra.dialog.SatPromptDialog;
 import com.satergo.extra.dialog.SatVoidDialog;
+import com.satergo.extra.market.PriceAggregator;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
@@ -36,22 +41,27 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.ConnectException;
+import java.net.URI;
 import java.net.URL;
 import java.text.DecimalFormat;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class WalletCtrl implements Initializable {
 
-	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(0);
+	private final ArrayList<Scheduler.Job> repeatingTasks = new ArrayList<>();
 
 	public void cancelRepeatingTasks() {
-		scheduler.shutdownNow();
+		repeatingTasks.forEach(Scheduler.Job::cancel);
+		repeatingTasks.clear();
+		Scheduler.get().setOffline(false);
+		if (tabs.containsKey("transactions"))
+			this.<TransactionsCtrl>getTab("transactions").stopBackfill();
 	}
 
 	private ChangeListener<Boolean> windowFocusListener;
@@ -95,6 +105,67 @@ public class WalletCtrl implements Initializable {
 
 	private void setBalance(Balance totalBalance) {
 		Main.get().getWallet().lastKnownBalance.set(totalBalance);
+		// Makes the token information available without network requests when it is needed, for example by ErgoURIs
+		TokenInfoCache.get(Main.programData().nodeNetworkType.get()).prefetch(totalBalance);
+	}
+
+	private static final Duration FALLBACK_REFRESH_INTERVAL = Duration.ofSeconds(60);
+	private static final int REFRESH_ATTEMPTS = 3;
+	// Only used by the change detection job
+	private int refreshAttempts;
+	private long lastRefresh = System.nanoTime();
+
+	/**
+	 * Refreshes the balance, and the transaction history if the balance changed, when the node has a new block or a new payment to the wallet.
+	 * The explorer can take a moment to index what the node already knows, so the balance is fetched again on the next checks until it changes.
+	 * If the node cannot be reached, the balance is refreshed every minute instead.
+	 */
+	private void checkForChanges(WalletChangeDetector changeDetector) {
+		Wallet wallet = Main.get().getWallet();
+		if (wallet == null) return;
+		try {
+			if (changeDetector.check(wallet.ergoTreeHexes()))
+				refreshAttempts = REFRESH_ATTEMPTS;
+		} catch (RuntimeException e) {
+			if (System.nanoTime() - lastRefresh >= FALLBACK_REFRESH_INTERVAL.toNanos())
+				refreshAttempts = 1;
+		}
+		if (refreshAttempts == 0) return;
+		refreshAttempts--;
+		lastRefresh = System.nanoTime();
+		try {
+			Balance totalBalance = wallet.totalBalance();
+			boolean changed = !totalBalance.equals(wallet.lastKnownBalance.get());
+			if (changed) refreshAttempts = 0;
+			Platform.runLater(() -> {
+				if (Main.get().getWallet() != wallet)
+					return;
+				revertOfflineMode();
+				setBalance(totalBalance);
+				if (changed)
+					this.<TransactionsCtrl>getTab("transactions").update();
+			});
+			syncUnspentBoxes(wallet);
+		} catch (ConnectException e) {
+			Platform.runLater(this::offlineMode);
+		} catch (Exception e) {
+			Utils.alertUnexpectedException(e);
+		}
+	}
+
+	/**
+	 * Transactions are built from the cached unspent boxes, so they are brought up to date here instead of when a transaction is built
+	 */
+	private static void syncUnspentBoxes(Wallet wallet) {
+		List<Address> addresses = wallet.addressStream().toList();
+		UnspentBoxCache unspentBoxes = wallet.unspentBoxes();
+		unspentBoxes.retainOnly(addresses);
+		try {
+			Utils.createErgoClient().execute(ctx -> unspentBoxes.sync(ctx, addresses));
+		} catch (RuntimeException e) {
+			// Tried again on the next change. The cache marks the addresses that failed as stale, so they are synchronized when a transaction is built.
+			System.err.println("Could not synchronize the unspent boxes: " + e);
+		}
 	}
 
 	private void setPrice(BigDecimal oneErgValue) {
@@ -109,7 +180,7 @@ public class WalletCtrl implements Initializable {
 			return;
 		}
 		try {
-			BigDecimal price = Main.programData().priceSource.get().fetchPrice(Main.programData().priceCurrency.get());
+			BigDecimal price = PriceAggregator.get().fetchPrice(Main.programData().priceSource.get(), Main.programData().priceCurrency.get());
 			try {
 				Main.get().market.updateTokenPrices();
 			} catch (IOException | InterruptedException ignored) {
@@ -186,23 +257,11 @@ public class WalletCtrl implements Initializable {
 			// Happens when the available currencies are changed. This listener gets called before the currency is selected.
 			if (newValue != null) updatePriceValue();
 		});
-		scheduler.scheduleAtFixedRate(this::updatePriceValue, 50, 60, TimeUnit.SECONDS);
-		scheduler.scheduleAtFixedRate(() -> {
-			try {
-				Balance totalBalance = Main.get().getWallet().totalBalance();
-				Platform.runLater(() -> {
-					// This seems very unlikely but it appears to have happened
-					if (Main.get().getWallet() != null)
-						return;
-					revertOfflineMode();
-					setBalance(totalBalance);
-				});
-			} catch (ConnectException e) {
-				Platform.runLater(this::offlineMode);
-			} catch (Exception e) {
-				Utils.alertUnexpectedException(e);
-			}
-		}, 60, 60, TimeUnit.SECONDS);
+		repeatingTasks.add(Scheduler.get().schedule("Price refresh", Scheduler.Priority.LOW,
+				Duration.ofSeconds(50), Duration.ofSeconds(60), Duration.ofSeconds(5), this::updatePriceValue));
+		WalletChangeDetector changeDetector = new WalletChangeDetector(URI.create(Main.programData().nodeAddress.get()));
+		repeatingTasks.add(Scheduler.get().schedule("Wallet change detection", Scheduler.Priority.NORMAL,
+				Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ofSeconds(2), () -> checkForChanges(changeDetector)));
 
 		if (Main.get().getWallet().key() instanceof WalletKey.Local) {
 			Main.programData().requirePasswordForSending.addListener((observable, oldValue, newValue) -> {
@@ -262,6 +321,7 @@ public class WalletCtrl implements Initializable {
 
 	public void offlineMode() {
 		offlineMode.set(true);
+		Scheduler.get().setOffline(true);
 		if (home.isSelected() || transactions.isSelected())
 			account.setSelected(true);
 	}
@@ -269,6 +329,7 @@ public class WalletCtrl implements Initializable {
 	public void revertOfflineMode() {
 		if (!offlineMode.get()) return;
 		offlineMode.set(false);
+		Scheduler.get().setOffline(false);
 	}
 
 	@FXML
@@ -276,7 +337,7 @@ public class WalletCtrl implements Initializable {
 		if (e.getButton() != MouseButton.PRIMARY) return;
 		new SimpleTask<>(() -> {
 			Balance totalBalance = Main.get().getWallet().totalBalance();
-			BigDecimal oneErgValue = Main.programData().priceSource.get().fetchPrice(Main.programData().priceCurrency.get());
+			BigDecimal oneErgValue = PriceAggregator.get().fetchPrice(Main.programData().priceSource.get(), Main.programData().priceCurrency.get());
 			return new Pair<>(totalBalance, oneErgValue);
 		}).onSuccess(v -> {
 			setBalance(v.getKey());
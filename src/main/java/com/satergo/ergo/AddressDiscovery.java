@@ -0,0 +1,82 @@
+package com.satergo.ergo;
+
+import com.satergo.WalletKey;
+import org.ergoplatform.appkit.NetworkType;
+import org.ergoplatform.explorer.client.DefaultApi;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Finds the EIP-3 addresses of a key that have been used. The addresses are derived and checked in batches of the size of the gap limit,
+ * with the addresses of a batch checked concurrently, until the gap limit amount of unused addresses in a row has been found.
+ */
+public class AddressDiscovery {
+
+	private static final int MAX_CONCURRENT_REQUESTS = 8;
+
+	private final NetworkType networkType;
+	private final DefaultApi api;
+
+	public AddressDiscovery(NetworkType networkType) {
+		this.networkType = networkType;
+		this.api = new Retrofit.Builder()
+				.baseUrl(ErgoInterface.getExplorerUrl(networkType))
+				.addConverterFactory(GsonConverterFactory.create())
+				.build().create(DefaultApi.class);
+	}
+
+	/**
+	 * @param start The first index to check
+	 * @param gapLimit The amount of unused addresses in a row after which the search stops
+	 * @return The used indexes in order
+	 */
+	public List<Integer> discover(WalletKey key, int start, int gapLimit) {
+		if (gapLimit < 1) throw new IllegalArgumentException("gapLimit must be positive");
+		ArrayList<Integer> used = new ArrayList<>();
+		int lastUsed = start - 1;
+		Semaphore permits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int from = start; from - lastUsed <= gapLimit; from += gapLimit) {
+				List<WalletKey.DerivedAddress> batch = key.derivedAddresses(networkType, from, from + gapLimit);
+				List<Future<Boolean>> futures = new ArrayList<>(batch.size());
+				for (WalletKey.DerivedAddress address : batch) {
+					futures.add(executor.submit(() -> {
+						permits.acquire();
+						try {
+							return hasTransactions(address.string());
+						} finally {
+							permits.release();
+						}
+					}));
+				}
+				for (int i = 0; i < batch.size(); i++) {
+					if (futures.get(i).get()) {
+						used.add(batch.get(i).index());
+						lastUsed = batch.get(i).index();
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException re) throw re;
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		return used;
+	}
+
+	private boolean hasTransactions(String address) {
+		try {
+			return api.getApiV1AddressesP1Transactions(address, 0, 1, true).execute().body().getTotal() > 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
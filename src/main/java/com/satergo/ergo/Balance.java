@@ -1,6 +1,9 @@
 package com.satergo.ergo;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -13,4 +16,40 @@ public record Balance(long confirmed, long unconfirmed, List<TokenBalance> confi
 				List.copyOf(Stream.concat(bal1.confirmedTokens.stream(), bal2.confirmedTokens.stream()).collect(Collectors.toMap(TokenBalance::id, Function.identity(), TokenBalance::sum)).values()),
 				List.copyOf(Stream.concat(bal1.unconfirmedTokens.stream(), bal2.unconfirmedTokens.stream()).collect(Collectors.toMap(TokenBalance::id, Function.identity(), TokenBalance::sum)).values()));
 	}
+
+	/**
+	 * Combines any number of balances in a single pass, unlike {@link #combine} which copies all tokens on every call.
+	 * Not thread-safe.
+	 */
+	public static class Accumulator {
+		private long confirmed, unconfirmed;
+		// token ID -> amount
+		private final LinkedHashMap<String, Long> confirmedAmounts = new LinkedHashMap<>(), unconfirmedAmounts = new LinkedHashMap<>();
+		// token ID -> the first seen balance of the token, used for its name and decimals
+		private final LinkedHashMap<String, TokenBalance> tokenDetails = new LinkedHashMap<>();
+
+		public void add(Balance balance) {
+			confirmed += balance.confirmed;
+			unconfirmed += balance.unconfirmed;
+			addTokens(balance.confirmedTokens, confirmedAmounts);
+			addTokens(balance.unconfirmedTokens, unconfirmedAmounts);
+		}
+
+		private void addTokens(List<TokenBalance> tokens, Map<String, Long> amounts) {
+			for (TokenBalance token : tokens) {
+				amounts.merge(token.id(), token.amount(), Long::sum);
+				tokenDetails.putIfAbsent(token.id(), token);
+			}
+		}
+
+		private List<TokenBalance> tokenList(Map<String, Long> amounts) {
+			ArrayList<TokenBalance> list = new ArrayList<>(amounts.size());
+			amounts.forEach((id, amount) -> list.add(tokenDetails.get(id).withAmount(amount)));
+			return List.copyOf(list);
+		}
+
+		public Balance result() {
+			return new Balance(confirmed, unconfirmed, tokenList(confirmedAmounts), tokenList(unconfirmedAmounts));
+		}
+	}
 }
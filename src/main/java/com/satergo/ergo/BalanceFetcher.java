@@ -0,0 +1,96 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.Address;
+import org.ergoplatform.appkit.NetworkType;
+
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Fetches the balances of many addresses using virtual threads, with a limit on how many requests
+ * are made to the explorer at the same time.
+ */
+public class BalanceFetcher {
+
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+	public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(20);
+
+	private final NetworkType networkType;
+	private final int maxConcurrentRequests;
+	private final Duration requestTimeout;
+
+	public BalanceFetcher(NetworkType networkType, int maxConcurrentRequests, Duration requestTimeout) {
+		if (maxConcurrentRequests < 1) throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+		this.networkType = networkType;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.requestTimeout = requestTimeout;
+	}
+
+	public BalanceFetcher(NetworkType networkType) {
+		this(networkType, DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * @param onAddressBalance Called with the balance of each address as soon as it is known, can be null.
+	 *                         It is called from the fetching threads.
+	 * @return The balance of all addresses combined
+	 * @throws ConnectException If the explorer could not be reached or did not respond in time
+	 */
+	public Balance fetch(Collection<Address> addresses, BiConsumer<Address, Balance> onAddressBalance) throws ConnectException {
+		Semaphore permits = new Semaphore(maxConcurrentRequests);
+		Balance.Accumulator accumulator = new Balance.Accumulator();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<?>> futures = new ArrayList<>(addresses.size());
+			for (Address address : addresses) {
+				futures.add(executor.submit(() -> {
+					Balance balance;
+					permits.acquire();
+					try {
+						balance = ErgoInterface.getBalance(networkType, address, requestTimeout);
+					} finally {
+						permits.release();
+					}
+					synchronized (accumulator) {
+						accumulator.add(balance);
+					}
+					if (onAddressBalance != null)
+						onAddressBalance.accept(address, balance);
+					return null;
+				}));
+			}
+			try {
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} catch (ExecutionException e) {
+				executor.shutdownNow();
+				throw rethrow(e.getCause());
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		synchronized (accumulator) {
+			return accumulator.result();
+		}
+	}
+
+	private static ConnectException rethrow(Throwable t) throws ConnectException {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConnectException ce)
+				throw ce;
+			if (cause instanceof HttpTimeoutException te)
+				throw (ConnectException) new ConnectException(te.getMessage()).initCause(te);
+		}
+		if (t instanceof RuntimeException re)
+			throw re;
+		throw new RuntimeException(t);
+	}
+}
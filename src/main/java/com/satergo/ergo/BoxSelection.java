@@ -0,0 +1,118 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.InputBoxesSelectionException;
+import org.ergoplatform.appkit.Parameters;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.*;
+
+/**
+ * The boxes chosen so far by a {@link CoinSelector}, with the ERG and token totals of them
+ */
+class BoxSelection {
+
+	// A P2PK input is the box ID, the proof length, a 56 byte Schnorr proof and an empty context extension
+	private static final int P2PK_INPUT_SIZE = 32 + 1 + 56 + 1;
+	// value, P2PK ErgoTree, creation height, token count and register count
+	private static final int CHANGE_BOX_BASE_SIZE = 8 + 36 + 4 + 1 + 1;
+	// token index in the transaction and amount
+	private static final int CHANGE_BOX_TOKEN_SIZE = 1 + 8;
+
+	final long ergNeeded;
+	final Map<String, Long> tokensNeeded;
+	final ArrayList<InputBox> boxes = new ArrayList<>();
+	private final HashSet<String> boxIds = new HashSet<>();
+	long erg = 0;
+	final HashMap<String, Long> tokens = new HashMap<>();
+
+	BoxSelection(long ergNeeded, Map<String, Long> tokensNeeded) {
+		this.ergNeeded = ergNeeded;
+		this.tokensNeeded = tokensNeeded;
+	}
+
+	void add(InputBox box) {
+		if (!boxIds.add(box.getId().toString())) return;
+		boxes.add(box);
+		erg += box.getValue();
+		for (ErgoToken token : box.getTokens()) {
+			tokens.merge(token.getId().toString(), token.getValue(), Long::sum);
+		}
+	}
+
+	boolean contains(InputBox box) {
+		return boxIds.contains(box.getId().toString());
+	}
+
+	/**
+	 * @return The amount of the token that is still needed
+	 */
+	long missing(String tokenId) {
+		return Math.max(0, tokensNeeded.get(tokenId) - tokens.getOrDefault(tokenId, 0L));
+	}
+
+	boolean tokensCovered() {
+		for (String tokenId : tokensNeeded.keySet()) {
+			if (missing(tokenId) > 0) return false;
+		}
+		return true;
+	}
+
+	int leftoverTokenCount() {
+		int count = 0;
+		for (Map.Entry<String, Long> entry : tokens.entrySet()) {
+			if (entry.getValue() > tokensNeeded.getOrDefault(entry.getKey(), 0L)) count++;
+		}
+		return count;
+	}
+
+	boolean changeNeeded() {
+		return erg > ergNeeded || leftoverTokenCount() > 0;
+	}
+
+	/**
+	 * @return Whether a transaction can be built from the boxes, which requires the change box (if any) to have at least the minimum value
+	 */
+	boolean isComplete() {
+		if (!tokensCovered() || erg < ergNeeded) return false;
+		return !changeNeeded() || erg - ergNeeded >= Parameters.MinChangeValue;
+	}
+
+	/**
+	 * @throws InputBoxesSelectionException If the selection is not complete, see {@link #isComplete}
+	 */
+	CoinSelector.Selection toSelection(String strategy) throws InputBoxesSelectionException {
+		if (!isComplete())
+			throw new InputBoxesSelectionException.NotEnoughCoinsForChangeException("Not enough ERG for the change box");
+		return new CoinSelector.Selection(strategy, List.copyOf(boxes), erg, changeNeeded(), estimateSize(boxes.size(), changeNeeded(), leftoverTokenCount()));
+	}
+
+	static int estimateSize(int inputCount, boolean changeNeeded, int changeTokenCount) {
+		return inputCount * P2PK_INPUT_SIZE + (changeNeeded ? CHANGE_BOX_BASE_SIZE + changeTokenCount * CHANGE_BOX_TOKEN_SIZE : 0);
+	}
+
+	static Map<String, Long> tokenMap(List<ErgoToken> tokens) {
+		HashMap<String, Long> map = new HashMap<>();
+		for (ErgoToken token : tokens) {
+			map.merge(token.getId().toString(), token.getValue(), Long::sum);
+		}
+		return map;
+	}
+
+	/**
+	 * @throws InputBoxesSelectionException If all boxes together do not contain enough ERG or tokens
+	 */
+	static void checkAvailable(List<InputBox> boxes, long ergNeeded, Map<String, Long> tokensNeeded) throws InputBoxesSelectionException {
+		BoxSelection all = new BoxSelection(ergNeeded, tokensNeeded);
+		boxes.forEach(all::add);
+		if (!all.tokensCovered()) {
+			HashMap<String, Long> tokenBalances = new HashMap<>();
+			for (String tokenId : tokensNeeded.keySet()) {
+				tokenBalances.put(tokenId, all.tokens.getOrDefault(tokenId, 0L));
+			}
+			throw new InputBoxesSelectionException.NotEnoughTokensException("Not enough tokens", tokenBalances);
+		}
+		if (all.erg < ergNeeded)
+			throw new InputBoxesSelectionException.NotEnoughErgsException("Not enough ERG", all.erg);
+	}
+}
@@ -0,0 +1,89 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.Address;
+import org.ergoplatform.appkit.ErgoValue;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.List;
+
+/**
+ * Calculates the serialized size of a box from its parts, to find the minimum value of a box without building it.
+ *
+ * <p>A serialized box is: value (VLQ), ErgoTree, creation height (VLQ), token count (1 byte),
+ * for each token its ID (32 bytes) and amount (VLQ), register count (1 byte), the register values,
+ * transaction ID (32 bytes) and index in the transaction (VLQ).
+ */
+public class BoxSizeEstimator {
+
+	public static final long MIN_VALUE_PER_BYTE = 360;
+
+	private static final int TOKEN_ID_SIZE = 32, TRANSACTION_ID_SIZE = 32;
+
+	/**
+	 * @param ergoTreeSize The serialized size of the ErgoTree
+	 * @param registersSize The serialized size of the values of the additional registers, see {@link #registersSize}
+	 * @param index The index of the box in the transaction
+	 */
+	public record Shape(int ergoTreeSize, long[] tokenAmounts, int registersSize, int creationHeight, int index) {
+		public static Shape of(Address address, ErgoToken[] tokens, int creationHeight, int index) {
+			long[] tokenAmounts = new long[tokens.length];
+			for (int i = 0; i < tokens.length; i++) {
+				tokenAmounts[i] = tokens[i].getValue();
+			}
+			return new Shape(address.getErgoAddress().script().bytes().length, tokenAmounts, 0, creationHeight, index);
+		}
+	}
+
+	public static int registersSize(ErgoValue<?>... registers) {
+		int size = 0;
+		for (ErgoValue<?> register : registers) {
+			size += register.toHex().length() / 2;
+		}
+		return size;
+	}
+
+	/**
+	 * @return The size in bytes of the box when it has the value
+	 */
+	public static int size(Shape shape, long value) {
+		int size = vlqLength(value) + shape.ergoTreeSize() + vlqLength(shape.creationHeight()) + 1;
+		for (long amount : shape.tokenAmounts()) {
+			size += TOKEN_ID_SIZE + vlqLength(amount);
+		}
+		return size + 1 + shape.registersSize() + TRANSACTION_ID_SIZE + vlqLength(shape.index());
+	}
+
+	/**
+	 * @return The smallest value the box can have, which depends on its size, which in turn depends on the length of the value
+	 */
+	public static long minimumValue(Shape shape) {
+		long value = 0;
+		while (true) {
+			long required = size(shape, value) * MIN_VALUE_PER_BYTE;
+			if (required <= value) return value;
+			value = required;
+		}
+	}
+
+	/**
+	 * @return The minimum value of each box, in the same order
+	 */
+	public static long[] minimumValues(List<Shape> shapes) {
+		long[] values = new long[shapes.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = minimumValue(shapes.get(i));
+		}
+		return values;
+	}
+
+	/**
+	 * @return The amount of bytes of the unsigned VLQ encoding of the value
+	 */
+	static int vlqLength(long value) {
+		int length = 1;
+		while ((value >>>= 7) != 0) {
+			length++;
+		}
+		return length;
+	}
+}
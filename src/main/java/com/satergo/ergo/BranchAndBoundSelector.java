@@ -0,0 +1,91 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.InputBoxesSelectionException;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Searches for boxes without tokens whose values add up to exactly the needed ERG, so that no change box is needed.
+ * Among the matches found, the one with the fewest inputs is used. If there is no exact match, or tokens are needed
+ * (which nearly always leaves tokens over for a change box), the fallback selector is used.
+ */
+public class BranchAndBoundSelector implements CoinSelector {
+
+	/** The maximum amount of steps in the search, it is stopped after this and the best match so far is used */
+	public static final int DEFAULT_MAX_TRIES = 100_000;
+
+	private final CoinSelector fallback;
+	private final int maxTries;
+
+	public BranchAndBoundSelector(CoinSelector fallback, int maxTries) {
+		this.fallback = fallback;
+		this.maxTries = maxTries;
+	}
+
+	public BranchAndBoundSelector(CoinSelector fallback) {
+		this(fallback, DEFAULT_MAX_TRIES);
+	}
+
+	@Override
+	public Selection select(List<InputBox> boxes, long ergNeeded, List<ErgoToken> tokensNeeded) throws InputBoxesSelectionException {
+		if (!tokensNeeded.isEmpty())
+			return fallback.select(boxes, ergNeeded, tokensNeeded);
+		List<InputBox> candidates = boxes.stream()
+				.filter(box -> box.getTokens().isEmpty())
+				.sorted(Comparator.comparingLong(InputBox::getValue).reversed())
+				.toList();
+		int n = candidates.size();
+		long[] values = new long[n];
+		// remaining[i] is the sum of the values from index i onwards
+		long[] remaining = new long[n + 1];
+		for (int i = n - 1; i >= 0; i--) {
+			values[i] = candidates.get(i).getValue();
+			remaining[i] = remaining[i + 1] + values[i];
+		}
+		boolean[] included = new boolean[n];
+		boolean[] best = null;
+		int bestCount = Integer.MAX_VALUE;
+		int depth = 0, count = 0;
+		long current = 0;
+		for (int tries = 0; tries < maxTries; tries++) {
+			boolean backtrack;
+			if (current > ergNeeded || current + remaining[depth] < ergNeeded || count >= bestCount) {
+				backtrack = true;
+			} else if (current == ergNeeded) {
+				best = included.clone();
+				bestCount = count;
+				backtrack = true;
+			} else backtrack = false;
+			if (backtrack) {
+				// Go back to the last included box and continue with it excluded
+				do {
+					depth--;
+				} while (depth >= 0 && !included[depth]);
+				if (depth < 0) break;
+				included[depth] = false;
+				current -= values[depth];
+				count--;
+			} else {
+				included[depth] = true;
+				current += values[depth];
+				count++;
+			}
+			depth++;
+		}
+		if (best == null)
+			return fallback.select(boxes, ergNeeded, tokensNeeded);
+		BoxSelection selection = new BoxSelection(ergNeeded, BoxSelection.tokenMap(tokensNeeded));
+		for (int i = 0; i < n; i++) {
+			if (best[i]) selection.add(candidates.get(i));
+		}
+		return selection.toSelection(name());
+	}
+
+	@Override
+	public String name() {
+		return "branch-and-bound";
+	}
+}
@@ -0,0 +1,62 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.InputBoxesSelectionException;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses which unspent boxes to spend for a transaction. Selection is done over boxes that have already been loaded,
+ * see {@link UnspentBoxCache}.
+ */
+public interface CoinSelector {
+
+	/**
+	 * @param boxes The boxes that can be spent
+	 * @param ergNeeded ERG to spend (in nanoERGs), including the fee
+	 * @param tokensNeeded Tokens to spend
+	 * @throws InputBoxesSelectionException If the boxes do not contain enough ERG or tokens,
+	 * or not enough ERG for a change box
+	 */
+	Selection select(List<InputBox> boxes, long ergNeeded, List<ErgoToken> tokensNeeded) throws InputBoxesSelectionException;
+
+	String name();
+
+	/**
+	 * @param changeNeeded Whether leftover ERG or tokens make a change box necessary
+	 * @param estimatedSize The estimated size in bytes of the signed inputs and the change box, which is the part
+	 *                      of the transaction that differs between selections
+	 */
+	record Selection(String strategy, List<InputBox> boxes, long ergTotal, boolean changeNeeded, int estimatedSize) {
+		public int inputCount() {
+			return boxes.size();
+		}
+	}
+
+	CoinSelector LARGEST_FIRST = new LargestFirstSelector();
+	CoinSelector TOKEN_AWARE = new TokenAwareSelector();
+	CoinSelector BRANCH_AND_BOUND = new BranchAndBoundSelector(TOKEN_AWARE);
+	/** Runs all strategies and uses the selection with the smallest estimated size */
+	CoinSelector SMALLEST = new SmallestSelector(List.of(BRANCH_AND_BOUND, TOKEN_AWARE, LARGEST_FIRST));
+
+	/**
+	 * Runs every selector, for example to show the difference between them. Selectors that fail are left out.
+	 * @throws InputBoxesSelectionException The failure of the first selector if all of them failed
+	 */
+	static List<Selection> compare(List<CoinSelector> selectors, List<InputBox> boxes, long ergNeeded, List<ErgoToken> tokensNeeded) throws InputBoxesSelectionException {
+		ArrayList<Selection> selections = new ArrayList<>();
+		InputBoxesSelectionException failure = null;
+		for (CoinSelector selector : selectors) {
+			try {
+				selections.add(selector.select(boxes, ergNeeded, tokensNeeded));
+			} catch (InputBoxesSelectionException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (selections.isEmpty() && failure != null)
+			throw failure;
+		return selections;
+	}
+}
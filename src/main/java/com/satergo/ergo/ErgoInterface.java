@@ -7,7 +7,6 @@ import com.grack.nanojson.JsonParserException;
 import com.satergo.SystemProperties;
 import com.satergo.Utils;
 import org.ergoplatform.appkit.*;
-import org.ergoplatform.appkit.impl.OutBoxImpl;
 import org.ergoplatform.sdk.ErgoId;
 import org.ergoplatform.sdk.ErgoToken;
 
@@ -15,9 +14,14 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.http.HttpRequest;
-import java.util.ArrayList;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Function;
 
 import static com.satergo.Utils.HTTP;
@@ -45,50 +49,86 @@ public class ErgoInterface {
 	}
 
 	public static Balance getBalance(NetworkType networkType, Address address) {
+		return getBalance(networkType, address, null);
+	}
+
+	/**
+	 * @param timeout The timeout of the request, or null for no timeout
+	 */
+	public static Balance getBalance(NetworkType networkType, Address address, Duration timeout) {
+		return send(balanceRequest(networkType, address, timeout), ErgoInterface::parseBalance);
+	}
+
+	/**
+	 * @param timeout The timeout of the request, or null for no timeout
+	 */
+	public static CompletableFuture<Balance> getBalanceAsync(NetworkType networkType, Address address, Duration timeout) {
+		return sendAsync(balanceRequest(networkType, address, timeout), ErgoInterface::parseBalance);
+	}
+
+	private static HttpRequest balanceRequest(NetworkType networkType, Address address, Duration timeout) {
 		// I don't want to use explorer here...
-		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType)).resolve("/api/v1/addresses/" + address + "/balance/total")).build();
-		try {
-			JsonObject body = JsonParser.object().from(HTTP.send(request, ofString()).body());
-			JsonObject confirmed = body.getObject("confirmed");
-			JsonObject unconfirmed = body.getObject("unconfirmed");
-			Function<JsonObject, TokenBalance> tokenDeserialize = obj -> new TokenBalance(obj.getString("tokenId"), obj.getLong("amount"), obj.getInt("decimals"), obj.getString("name"));
-			return new Balance(
-					confirmed.getLong("nanoErgs"),
-					unconfirmed.getLong("nanoErgs"),
-					confirmed.getArray("tokens").stream().map(raw -> (JsonObject) raw).map(tokenDeserialize).toList(),
-					unconfirmed.getArray("tokens").stream().map(raw -> (JsonObject) raw).map(tokenDeserialize).toList());
-		} catch (JsonParserException | IOException | InterruptedException e) {
-			throw new RuntimeException(e);
-		}
+		HttpRequest.Builder requestBuilder = Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType)).resolve("/api/v1/addresses/" + address + "/balance/total"));
+		if (timeout != null)
+			requestBuilder.timeout(timeout);
+		return requestBuilder.build();
+	}
+
+	private static Balance parseBalance(String responseBody) throws JsonParserException {
+		JsonObject body = JsonParser.object().from(responseBody);
+		JsonObject confirmed = body.getObject("confirmed");
+		JsonObject unconfirmed = body.getObject("unconfirmed");
+		Function<JsonObject, TokenBalance> tokenDeserialize = obj -> new TokenBalance(obj.getString("tokenId"), obj.getLong("amount"), obj.getInt("decimals"), obj.getString("name"));
+		return new Balance(
+				confirmed.getLong("nanoErgs"),
+				unconfirmed.getLong("nanoErgs"),
+				confirmed.getArray("tokens").stream().map(raw -> (JsonObject) raw).map(tokenDeserialize).toList(),
+				unconfirmed.getArray("tokens").stream().map(raw -> (JsonObject) raw).map(tokenDeserialize).toList());
 	}
 
 	public static int getNetworkBlockHeight(NetworkType networkType) {
-		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType) + "/blocks?limit=1&sortBy=height&sortDirection=desc")).build();
-		try {
-			JsonObject body = JsonParser.object().from(HTTP.send(request, ofString()).body());
-			return body.getArray("items").getObject(0).getInt("height");
-		} catch (JsonParserException | IOException | InterruptedException e) {
-			throw new RuntimeException(e);
-		}
+		return send(networkBlockHeightRequest(networkType), ErgoInterface::parseNetworkBlockHeight);
+	}
+
+	public static CompletableFuture<Integer> getNetworkBlockHeightAsync(NetworkType networkType) {
+		return sendAsync(networkBlockHeightRequest(networkType), ErgoInterface::parseNetworkBlockHeight);
+	}
+
+	private static HttpRequest networkBlockHeightRequest(NetworkType networkType) {
+		return Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType) + "/blocks?limit=1&sortBy=height&sortDirection=desc")).build();
+	}
+
+	private static int parseNetworkBlockHeight(String responseBody) throws JsonParserException {
+		JsonObject body = JsonParser.object().from(responseBody);
+		return body.getArray("items").getObject(0).getInt("height");
+	}
+
+	/**
+	 * @return The IDs of the boxes that are spent by unconfirmed transactions involving the address
+	 */
+	public static Set<String> getMempoolSpentBoxIds(Address address) {
+		return send(mempoolTransactionsRequest(address), ErgoInterface::parseMempoolSpentBoxIds);
 	}
 
-	public static List<InputBox> selectAllBoxes(List<Address> addresses, BlockchainContext ctx) {
-		BoxOperations.ExplorerApiUnspentLoader loader = new ExplorerAndPoolUnspentBoxesLoader().withAllowChainedTx(true);
-		ArrayList<InputBox> inputBoxes = new ArrayList<>();
-		for (Address address : addresses) {
-			int page = 0;
-			while (true) {
-				List<InputBox> result = loader.loadBoxesPage(ctx, address, page++);
-				inputBoxes.addAll(result);
-				if (result.size() < BlockchainContext.DEFAULT_LIMIT_FOR_API)
-					break;
+	private static HttpRequest mempoolTransactionsRequest(Address address) {
+		return Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(address.getNetworkType()))
+				.resolve("/api/v1/mempool/transactions/byAddress/" + address + "?limit=500")).build();
+	}
+
+	private static Set<String> parseMempoolSpentBoxIds(String responseBody) throws JsonParserException {
+		JsonObject body = JsonParser.object().from(responseBody);
+		HashSet<String> boxIds = new HashSet<>();
+		for (Object tx : body.getArray("items")) {
+			for (Object input : ((JsonObject) tx).getArray("inputs")) {
+				boxIds.add(((JsonObject) input).getString("boxId"));
 			}
 		}
-		return inputBoxes;
+		return boxIds;
 	}
 
 	/**
 	 * @param ergoClient ErgoClient, see for example {@link #newNodeApiClient}
+	 * @param boxCache The unspent boxes of the input addresses
 	 * @param inputAddresses Input addresses
 	 * @param recipient Address to send to
 	 * @param amountToSend Amount to send (in nanoERGs)
@@ -98,18 +138,14 @@ public class ErgoInterface {
 	 * @throws InputBoxesSelectionException If not enough ERG or not enough tokens were found
 	 * @return The transaction ID with quotes around it
 	 */
-	public static UnsignedTransaction createUnsignedTransaction(ErgoClient ergoClient, List<Address> inputAddresses,
+	public static UnsignedTransaction createUnsignedTransaction(ErgoClient ergoClient, UnspentBoxCache boxCache, List<Address> inputAddresses,
 								  Address recipient, long amountToSend, long feeAmount, Address changeAddress, ErgoToken... tokensToSend) throws InputBoxesSelectionException {
 		if (feeAmount < Parameters.MinFee) {
 			throw new IllegalArgumentException("fee cannot be less than MinFee (" + Parameters.MinFee + " nanoERG)");
 		}
 		return ergoClient.execute(ctx -> {
-			List<InputBox> boxesToSpend = BoxOperations.createForSenders(inputAddresses, ctx)
-					.withAmountToSpend(amountToSend)
-					.withFeeAmount(feeAmount)
-					.withTokensToSpend(List.of(tokensToSend))
-					.withInputBoxesLoader(new ExplorerAndPoolUnspentBoxesLoader().withAllowChainedTx(true))
-					.loadTop();
+			List<InputBox> boxesToSpend = CoinSelector.SMALLEST.select(boxCache.boxes(ctx, inputAddresses),
+					amountToSend + feeAmount, List.of(tokensToSend)).boxes();
 			UnsignedTransactionBuilder txBuilder = ctx.newTxBuilder();
 			OutBoxBuilder newBoxBuilder = txBuilder.outBoxBuilder();
 			newBoxBuilder.value(amountToSend);
@@ -127,6 +163,7 @@ public class ErgoInterface {
 	}
 
 	/**
+	 * @param boxCache The unspent boxes of the input addresses
 	 * @param inputAddresses Input addresses
 	 * @param totalErg Amount to send (in nanoERGs)
 	 * @param feeAmount Fee, minimum {@link Parameters#MinFee}
@@ -135,17 +172,13 @@ public class ErgoInterface {
 	 * @throws InputBoxesSelectionException If not enough ERG or not enough tokens were found
 	 * @return The transaction ID with quotes around it
 	 */
-	public static UnsignedTransaction createUnsignedTransaction(BlockchainContext ctx, List<Address> inputAddresses,
+	public static UnsignedTransaction createUnsignedTransaction(BlockchainContext ctx, UnspentBoxCache boxCache, List<Address> inputAddresses,
 																List<OutBox> outBoxes, long totalErg, List<ErgoToken> totalTokens, long feeAmount, Address changeAddress) throws InputBoxesSelectionException {
 		if (feeAmount < Parameters.MinFee) {
 			throw new IllegalArgumentException("fee cannot be less than MinFee (" + Parameters.MinFee + " nanoERG)");
 		}
-		List<InputBox> boxesToSpend = BoxOperations.createForSenders(inputAddresses, ctx)
-				.withAmountToSpend(totalErg)
-				.withFeeAmount(feeAmount)
-				.withTokensToSpend(totalTokens)
-				.withInputBoxesLoader(new ExplorerAndPoolUnspentBoxesLoader().withAllowChainedTx(true))
-				.loadTop();
+		List<InputBox> boxesToSpend = CoinSelector.SMALLEST.select(boxCache.boxes(ctx, inputAddresses),
+				totalErg + feeAmount, totalTokens).boxes();
 		UnsignedTransactionBuilder txBuilder = ctx.newTxBuilder();
 		return txBuilder
 				.addInputs(boxesToSpend.toArray(new InputBox[0]))
@@ -155,34 +188,73 @@ public class ErgoInterface {
 				.build();
 	}
 
-	private static final long MIN_VALUE_PER_BYTE = 360;
-	public static OutBox buildWithMinimumBoxValue(OutBoxBuilder outBoxBuilder, int boxIndex) {
-		// Build a box with 0.001 to get the size that it would be
-		int boxSize = ((OutBoxImpl) outBoxBuilder.value(toNanoErg(new BigDecimal("0.001"))).build())
-				.getErgoBoxCandidate().toBox("0".repeat(64), (short) boxIndex).bytes().length;
-		// Build a box with the calculated minimum ERG value
-		outBoxBuilder.value(boxSize * MIN_VALUE_PER_BYTE);
-		return outBoxBuilder.build();
+	/**
+	 * Builds a box with the minimum value for its size, the builder must have the same contract, tokens and creation height as the shape
+	 */
+	public static OutBox buildWithMinimumBoxValue(OutBoxBuilder outBoxBuilder, BoxSizeEstimator.Shape shape) {
+		return outBoxBuilder.value(BoxSizeEstimator.minimumValue(shape)).build();
 	}
 
 	public static JsonObject getTokenItem(NetworkType networkType, ErgoId tokenId) {
-		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType))
+		return send(tokenItemRequest(networkType, tokenId), ErgoInterface::parseTokenItem);
+	}
+
+	public static CompletableFuture<JsonObject> getTokenItemAsync(NetworkType networkType, ErgoId tokenId) {
+		return sendAsync(tokenItemRequest(networkType, tokenId), ErgoInterface::parseTokenItem);
+	}
+
+	private static HttpRequest tokenItemRequest(NetworkType networkType, ErgoId tokenId) {
+		return Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType))
 				.resolve("/api/v1/boxes/byTokenId/").resolve(tokenId.toString() + "/").resolve("?limit=1")).build();
+	}
+
+	private static JsonObject parseTokenItem(String responseBody) throws JsonParserException {
+		JsonObject body = JsonParser.object().from(responseBody);
+		return body.getArray("items").getObject(0);
+	}
+
+	public static TokenInfo getTokenInfo(NetworkType networkType, ErgoId tokenId) {
+		return send(tokenInfoRequest(networkType, tokenId), ErgoInterface::parseTokenInfo);
+	}
+
+	public static CompletableFuture<TokenInfo> getTokenInfoAsync(NetworkType networkType, ErgoId tokenId) {
+		return sendAsync(tokenInfoRequest(networkType, tokenId), ErgoInterface::parseTokenInfo);
+	}
+
+	private static HttpRequest tokenInfoRequest(NetworkType networkType, ErgoId tokenId) {
+		return Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType))
+				.resolve("/api/v1/tokens/").resolve(tokenId.toString())).build();
+	}
+
+	private static TokenInfo parseTokenInfo(String responseBody) throws JsonParserException {
+		JsonObject body = JsonParser.object().from(responseBody);
+		return new TokenInfo(body.getString("id"), body.getString("boxId"), body.getLong("emissionAmount"),
+				body.getString("name"), body.getString("description"), body.getString("type"), body.getInt("decimals"));
+	}
+
+	/**
+	 * @return Whether the explorer knows the transaction as confirmed
+	 */
+	public static boolean isTransactionConfirmed(NetworkType networkType, String txId) {
+		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType))
+				.resolve("/api/v1/transactions/" + txId)).build();
 		try {
-			JsonObject body = JsonParser.object().from(HTTP.send(request, ofString()).body());
-			return body.getArray("items").getObject(0);
-		} catch (IOException | InterruptedException | JsonParserException e) {
+			return HTTP.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+		} catch (IOException | InterruptedException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public static TokenInfo getTokenInfo(NetworkType networkType, ErgoId tokenId) {
+	/**
+	 * @return The ID of the transaction that spent the box according to the explorer, or null if the box is unspent or not known to the explorer
+	 */
+	public static String getSpendingTransactionId(NetworkType networkType, String boxId) {
 		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(networkType))
-				.resolve("/api/v1/tokens/").resolve(tokenId.toString())).build();
+				.resolve("/api/v1/boxes/" + boxId)).build();
 		try {
-			JsonObject body = JsonParser.object().from(HTTP.send(request, ofString()).body());
-			return new TokenInfo(body.getString("id"), body.getString("boxId"), body.getLong("emissionAmount"),
-					body.getString("name"), body.getString("description"), body.getString("type"), body.getInt("decimals"));
+			HttpResponse<String> response = HTTP.send(request, ofString());
+			if (response.statusCode() == 404) return null;
+			return JsonParser.object().from(response.body()).getString("spentTransactionId");
 		} catch (IOException | InterruptedException | JsonParserException e) {
 			throw new RuntimeException(e);
 		}
@@ -190,18 +262,58 @@ public class ErgoInterface {
 
 	public static final int DEMURRAGE_EVERY = 1051200;
 	public static OptionalInt getOldestUTXOCreationHeight(Address address) {
-		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(address.getNetworkType()))
+		return send(oldestUTXORequest(address), ErgoInterface::parseOldestUTXOCreationHeight);
+	}
+
+	public static CompletableFuture<OptionalInt> getOldestUTXOCreationHeightAsync(Address address) {
+		return sendAsync(oldestUTXORequest(address), ErgoInterface::parseOldestUTXOCreationHeight);
+	}
+
+	private static HttpRequest oldestUTXORequest(Address address) {
+		return Utils.httpRequestBuilder().uri(URI.create(getExplorerUrl(address.getNetworkType()))
 				.resolve("/api/v1/boxes/unspent/byAddress/" + address + "?limit=1&sortDirection=desc")).build();
+	}
+
+	private static OptionalInt parseOldestUTXOCreationHeight(String responseBody) throws JsonParserException {
+		JsonObject body = JsonParser.object().from(responseBody);
+		JsonArray items = body.getArray("items");
+		if (items.isEmpty()) return OptionalInt.empty();
+		return OptionalInt.of(items.getObject(0).getInt("creationHeight"));
+	}
+
+	@FunctionalInterface
+	private interface ResponseParser<T> {
+		T parse(String responseBody) throws JsonParserException;
+	}
+
+	private static <T> T send(HttpRequest request, ResponseParser<T> parser) {
 		try {
-			JsonObject body = JsonParser.object().from(HTTP.send(request, ofString()).body());
-			JsonArray items = body.getArray("items");
-			if (items.isEmpty()) return OptionalInt.empty();
-			return OptionalInt.of(items.getObject(0).getInt("creationHeight"));
-		} catch (IOException | InterruptedException | JsonParserException e) {
+			return parser.parse(HTTP.send(request, ofString()).body());
+		} catch (JsonParserException | IOException | InterruptedException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Cancelling the returned future, or it completing exceptionally (for example through {@link CompletableFuture#orTimeout}),
+	 * also cancels the HTTP exchange.
+	 * Failures are reported as a {@link CompletionException} wrapping the IOException or JsonParserException.
+	 */
+	private static <T> CompletableFuture<T> sendAsync(HttpRequest request, ResponseParser<T> parser) {
+		CompletableFuture<HttpResponse<String>> response = HTTP.sendAsync(request, ofString());
+		CompletableFuture<T> result = response.thenApply(r -> {
+			try {
+				return parser.parse(r.body());
+			} catch (JsonParserException e) {
+				throw new CompletionException(e);
+			}
+		});
+		result.whenComplete((value, t) -> {
+			if (t != null) response.cancel(true);
+		});
+		return result;
+	}
+
 	public static int getNetworkHeight() {
 		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create("https://api.ergoplatform.com/api/v1/blocks?limit=1")).build();
 		try {
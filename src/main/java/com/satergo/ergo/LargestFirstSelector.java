@@ -0,0 +1,51 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.InputBoxesSelectionException;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes the boxes with the most of each needed token, then the boxes with the most ERG
+ */
+public class LargestFirstSelector implements CoinSelector {
+
+	@Override
+	public Selection select(List<InputBox> boxes, long ergNeeded, List<ErgoToken> tokensNeeded) throws InputBoxesSelectionException {
+		Map<String, Long> tokens = BoxSelection.tokenMap(tokensNeeded);
+		BoxSelection.checkAvailable(boxes, ergNeeded, tokens);
+		BoxSelection selection = new BoxSelection(ergNeeded, tokens);
+		for (String tokenId : tokens.keySet()) {
+			List<InputBox> withToken = boxes.stream()
+					.filter(box -> tokenAmount(box, tokenId) > 0)
+					.sorted(Comparator.comparingLong((InputBox box) -> tokenAmount(box, tokenId)).reversed())
+					.toList();
+			for (InputBox box : withToken) {
+				if (selection.missing(tokenId) == 0) break;
+				selection.add(box);
+			}
+		}
+		List<InputBox> byValue = boxes.stream().sorted(Comparator.comparingLong(InputBox::getValue).reversed()).toList();
+		for (InputBox box : byValue) {
+			if (selection.isComplete()) break;
+			selection.add(box);
+		}
+		return selection.toSelection(name());
+	}
+
+	static long tokenAmount(InputBox box, String tokenId) {
+		long amount = 0;
+		for (ErgoToken token : box.getTokens()) {
+			if (token.getId().toString().equals(tokenId)) amount += token.getValue();
+		}
+		return amount;
+	}
+
+	@Override
+	public String name() {
+		return "largest-first";
+	}
+}
@@ -0,0 +1,32 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.InputBoxesSelectionException;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs several selectors and uses the selection with the smallest estimated size, then the fewest inputs
+ */
+public class SmallestSelector implements CoinSelector {
+
+	private final List<CoinSelector> selectors;
+
+	public SmallestSelector(List<CoinSelector> selectors) {
+		this.selectors = List.copyOf(selectors);
+	}
+
+	@Override
+	public Selection select(List<InputBox> boxes, long ergNeeded, List<ErgoToken> tokensNeeded) throws InputBoxesSelectionException {
+		return CoinSelector.compare(selectors, boxes, ergNeeded, tokensNeeded).stream()
+				.min(Comparator.comparingInt(Selection::estimatedSize).thenComparingInt(Selection::inputCount))
+				.orElseThrow();
+	}
+
+	@Override
+	public String name() {
+		return "smallest";
+	}
+}
@@ -0,0 +1,77 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.InputBoxesSelectionException;
+import org.ergoplatform.appkit.Parameters;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tries to use as few inputs as possible. For the tokens, the box that covers the largest part of what is still needed
+ * is taken each time, preferring boxes without other tokens so that the change box stays small.
+ * For the ERG, the smallest box without tokens that covers the rest is taken if there is one.
+ */
+public class TokenAwareSelector implements CoinSelector {
+
+	@Override
+	public Selection select(List<InputBox> boxes, long ergNeeded, List<ErgoToken> tokensNeeded) throws InputBoxesSelectionException {
+		Map<String, Long> tokens = BoxSelection.tokenMap(tokensNeeded);
+		BoxSelection.checkAvailable(boxes, ergNeeded, tokens);
+		BoxSelection selection = new BoxSelection(ergNeeded, tokens);
+		while (!selection.tokensCovered()) {
+			InputBox best = null;
+			double bestCoverage = 0;
+			int bestOtherTokens = 0;
+			for (InputBox box : boxes) {
+				if (selection.contains(box)) continue;
+				double coverage = 0;
+				int otherTokens = 0;
+				for (ErgoToken token : box.getTokens()) {
+					String tokenId = token.getId().toString();
+					long missing = tokens.containsKey(tokenId) ? selection.missing(tokenId) : 0;
+					if (missing > 0) coverage += (double) Math.min(missing, token.getValue()) / missing;
+					else otherTokens++;
+				}
+				if (coverage > bestCoverage || (coverage == bestCoverage && coverage > 0 && otherTokens < bestOtherTokens)) {
+					best = box;
+					bestCoverage = coverage;
+					bestOtherTokens = otherTokens;
+				}
+			}
+			// cannot happen after checkAvailable
+			if (best == null) break;
+			selection.add(best);
+		}
+		while (!selection.isComplete()) {
+			InputBox smallestCovering = null, largest = null;
+			for (InputBox box : boxes) {
+				if (selection.contains(box)) continue;
+				// a box with tokens is only used when there is no other choice, as its tokens would need to go to the change box
+				if (largest == null || (box.getTokens().isEmpty() && !largest.getTokens().isEmpty())
+						|| (box.getTokens().isEmpty() == largest.getTokens().isEmpty() && box.getValue() > largest.getValue()))
+					largest = box;
+				if (box.getTokens().isEmpty() && covers(selection, box)
+						&& (smallestCovering == null || box.getValue() < smallestCovering.getValue()))
+					smallestCovering = box;
+			}
+			if (smallestCovering != null) selection.add(smallestCovering);
+			else if (largest != null) selection.add(largest);
+			else break;
+		}
+		return selection.toSelection(name());
+	}
+
+	private static boolean covers(BoxSelection selection, InputBox box) {
+		long erg = selection.erg + box.getValue();
+		if (erg < selection.ergNeeded) return false;
+		return erg == selection.ergNeeded && selection.leftoverTokenCount() == 0
+				|| erg - selection.ergNeeded >= Parameters.MinChangeValue;
+	}
+
+	@Override
+	public String name() {
+		return "token-aware";
+	}
+}
@@ -0,0 +1,234 @@
+package com.satergo.ergo;
+
+import com.satergo.Utils;
+import org.ergoplatform.appkit.NetworkType;
+import org.ergoplatform.sdk.ErgoId;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Token information never changes after the token is minted, so it is stored in memory and
+ * appended to a file in the settings directory the first time it is fetched.
+ *
+ * <p>File format: magic number (int), version (int), then records of
+ * token ID (32 bytes), box ID (32 bytes), emission amount (long), decimals (int),
+ * and name, description and type (each a boolean for presence followed by a UTF string).
+ * A truncated record at the end of the file (from an interrupted write) is discarded when loading.
+ */
+public class TokenInfoCache {
+
+	private static final int MAGIC_NUMBER = 0x544B4943;
+	private static final int FILE_VERSION = 1;
+	/** The maximum amount of token information requests that are made at the same time by {@link #prefetch} */
+	private static final int PREFETCH_BATCH_SIZE = 16;
+
+	private static final EnumMap<NetworkType, TokenInfoCache> instances = new EnumMap<>(NetworkType.class);
+
+	public static synchronized TokenInfoCache get(NetworkType networkType) {
+		return instances.computeIfAbsent(networkType, nt -> new TokenInfoCache(nt, Utils.settingsDir().resolve("token-info-" + nt.name().toLowerCase(Locale.ROOT) + ".cache")));
+	}
+
+	private final NetworkType networkType;
+	private final Path file;
+	private final ConcurrentHashMap<ErgoId, TokenInfo> memory = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ErgoId, CompletableFuture<TokenInfo>> inFlight = new ConcurrentHashMap<>();
+	private volatile boolean loaded = false;
+	private final ExecutorService loader = Executors.newVirtualThreadPerTaskExecutor();
+
+	private TokenInfoCache(NetworkType networkType, Path file) {
+		this.networkType = networkType;
+		this.file = file;
+	}
+
+	/**
+	 * @return The cached token information, or null if it has not been fetched yet
+	 */
+	public TokenInfo getIfCached(ErgoId tokenId) {
+		ensureLoaded();
+		return memory.get(tokenId);
+	}
+
+	/**
+	 * Returns the cached token information, fetching and storing it if it is not cached
+	 */
+	public TokenInfo get(ErgoId tokenId) {
+		try {
+			return getAsync(tokenId).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException re) throw re;
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	public CompletableFuture<TokenInfo> getAsync(ErgoId tokenId) {
+		TokenInfo cached = getIfCached(tokenId);
+		if (cached != null)
+			return CompletableFuture.completedFuture(cached);
+		// Concurrent requests for the same token share one network request
+		CompletableFuture<TokenInfo> future = new CompletableFuture<>();
+		CompletableFuture<TokenInfo> existing = inFlight.putIfAbsent(tokenId, future);
+		if (existing != null)
+			return existing;
+		// Another fetch of this token may have finished between the cache check and putIfAbsent
+		TokenInfo fetched = memory.get(tokenId);
+		if (fetched != null) {
+			inFlight.remove(tokenId, future);
+			future.complete(fetched);
+			return future;
+		}
+		ErgoInterface.getTokenInfoAsync(networkType, tokenId).whenComplete((tokenInfo, t) -> {
+			if (tokenInfo != null) {
+				memory.put(tokenId, tokenInfo);
+				append(tokenInfo);
+			}
+			inFlight.remove(tokenId);
+			if (t != null) future.completeExceptionally(t);
+			else future.complete(tokenInfo);
+		});
+		return future;
+	}
+
+	/**
+	 * Fetches and stores the information of all tokens in the balance that are not cached yet.
+	 * Tokens that fail to be fetched are skipped.
+	 */
+	public CompletableFuture<Void> prefetch(Balance balance) {
+		return prefetch(Stream.concat(balance.confirmedTokens().stream(), balance.unconfirmedTokens().stream())
+				.map(TokenBalance::id).distinct().map(ErgoId::create).toList());
+	}
+
+	public CompletableFuture<Void> prefetch(Collection<ErgoId> tokenIds) {
+		// Loading the file is done in the background as this may be called from the FX thread
+		return CompletableFuture.runAsync(this::ensureLoaded, loader).thenCompose(loaded -> {
+			List<ErgoId> missing = tokenIds.stream().filter(id -> !memory.containsKey(id)).toList();
+			CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+			for (int i = 0; i < missing.size(); i += PREFETCH_BATCH_SIZE) {
+				List<ErgoId> batch = missing.subList(i, Math.min(missing.size(), i + PREFETCH_BATCH_SIZE));
+				chain = chain.thenCompose(v -> CompletableFuture.allOf(batch.stream()
+						.map(id -> getAsync(id).exceptionally(t -> null))
+						.toArray(CompletableFuture[]::new)));
+			}
+			return chain;
+		});
+	}
+
+	private void ensureLoaded() {
+		if (loaded) return;
+		synchronized (this) {
+			if (loaded) return;
+			try {
+				load();
+			} catch (IOException e) {
+				// The cache is only an optimization, start over with an empty file
+				e.printStackTrace();
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException ignored) {
+				}
+			}
+			loaded = true;
+		}
+	}
+
+	private void load() throws IOException {
+		if (!Files.isRegularFile(file)) return;
+		long validLength;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC_NUMBER || in.readInt() != FILE_VERSION)
+				throw new IOException("Unknown token information cache file format");
+			validLength = 8;
+			while (true) {
+				TokenInfo tokenInfo;
+				try {
+					tokenInfo = readRecord(in);
+				} catch (EOFException e) {
+					break;
+				}
+				memory.put(ErgoId.create(tokenInfo.id()), tokenInfo);
+				validLength += recordLength(tokenInfo);
+			}
+		}
+		if (Files.size(file) != validLength) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(validLength);
+			}
+		}
+	}
+
+	private synchronized void append(TokenInfo tokenInfo) {
+		try {
+			boolean newFile = !Files.isRegularFile(file);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+				if (newFile) {
+					out.writeInt(MAGIC_NUMBER);
+					out.writeInt(FILE_VERSION);
+				}
+				writeRecord(out, tokenInfo);
+			}
+		} catch (IOException e) {
+			// The information is still cached in memory
+			e.printStackTrace();
+		}
+	}
+
+	private static final HexFormat HEX = HexFormat.of();
+
+	private static void writeRecord(DataOutputStream out, TokenInfo tokenInfo) throws IOException {
+		out.write(HEX.parseHex(tokenInfo.id()));
+		out.write(HEX.parseHex(tokenInfo.boxId()));
+		out.writeLong(tokenInfo.emissionAmount());
+		out.writeInt(tokenInfo.decimals());
+		writeNullableUTF(out, tokenInfo.name());
+		writeNullableUTF(out, tokenInfo.description());
+		writeNullableUTF(out, tokenInfo.type());
+	}
+
+	private static TokenInfo readRecord(DataInputStream in) throws IOException {
+		byte[] id = new byte[32], boxId = new byte[32];
+		in.readFully(id);
+		in.readFully(boxId);
+		long emissionAmount = in.readLong();
+		int decimals = in.readInt();
+		String name = readNullableUTF(in);
+		String description = readNullableUTF(in);
+		String type = readNullableUTF(in);
+		return new TokenInfo(HEX.formatHex(id), HEX.formatHex(boxId), emissionAmount, name, description, type, decimals);
+	}
+
+	private static long recordLength(TokenInfo tokenInfo) {
+		return 32 + 32 + 8 + 4 + nullableUTFLength(tokenInfo.name()) + nullableUTFLength(tokenInfo.description()) + nullableUTFLength(tokenInfo.type());
+	}
+
+	private static void writeNullableUTF(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) out.writeUTF(s);
+	}
+
+	private static String readNullableUTF(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static long nullableUTFLength(String s) {
+		if (s == null) return 1;
+		// Modified UTF-8 as written by DataOutputStream#writeUTF, including its 2 byte length prefix
+		long length = 2;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) length += 1;
+			else if (c <= 0x07FF) length += 2;
+			else length += 3;
+		}
+		return 1 + length;
+	}
+}
@@ -0,0 +1,300 @@
+package com.satergo.ergo;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.satergo.extra.AESEncryption;
+import org.ergoplatform.appkit.Address;
+import org.ergoplatform.explorer.client.DefaultApi;
+import org.ergoplatform.explorer.client.model.AssetInstanceInfo;
+import org.ergoplatform.explorer.client.model.InputInfo;
+import org.ergoplatform.explorer.client.model.OutputInfo;
+import org.ergoplatform.explorer.client.model.TransactionInfo;
+
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local record of what the confirmed transactions of a set of addresses changed for each of them.
+ * The inputs and outputs are not kept, they are downloaded again from the explorer when they are needed.
+ *
+ * <p>For every address, the height of the newest known transaction is recorded. {@link #syncNewer} only downloads
+ * transactions down to that height, and {@link #backfill} pages through the older history one page at a time.
+ * The stored transactions of an address are always the newest ones, so the amount of them is the offset of the next older page.
+ *
+ * <p>The file only contains public blockchain data, but it tells which addresses belong to the same wallet, so it is encrypted
+ * with the cache key of the wallet. It is stored as gzip compressed JSON, encrypted like the sections of the wallet file.
+ */
+public class TransactionHistoryStore {
+
+	private static final int FILE_VERSION = 3;
+	private static final int NEWER_PAGE_SIZE = 100;
+	/** The explorer does not allow more than 500 */
+	private static final int BACKFILL_PAGE_SIZE = 500;
+
+	private static class Header {
+		long timestamp;
+		int inputCount, outputCount;
+		/** address -> what the transaction changed for it, for the stored addresses that it involves */
+		HashMap<String, Change> changes = new HashMap<>();
+	}
+
+	private static class Change {
+		long erg;
+		/** token ID -> amount */
+		LinkedHashMap<String, Long> tokens = new LinkedHashMap<>();
+	}
+
+	private record TokenName(String name, int decimals) {}
+
+	private static class AddressState {
+		/** -1 if nothing has been synchronized yet */
+		int highestHeight = -1;
+		boolean complete = false;
+		LinkedHashSet<String> transactionIds = new LinkedHashSet<>();
+	}
+
+	private static class Data {
+		int version = FILE_VERSION;
+		HashMap<String, AddressState> addresses = new HashMap<>();
+		HashMap<String, Header> transactions = new HashMap<>();
+		HashMap<String, TokenName> tokens = new HashMap<>();
+	}
+
+	private static final Gson GSON = new Gson();
+
+	private final Path file;
+	private final SecretKey key;
+	private final Data data;
+	private Set<String> summaryAddresses;
+	private List<TransactionSummary> summaryCache;
+
+	private TransactionHistoryStore(Path file, SecretKey key, Data data) {
+		this.file = file;
+		this.key = key;
+		this.data = data;
+	}
+
+	/**
+	 * Loads the store from the file, or creates an empty one if the file does not exist or cannot be read
+	 * @param key See {@link com.satergo.Wallet#cacheKey()}
+	 */
+	public static TransactionHistoryStore load(Path file, SecretKey key) {
+		if (Files.isRegularFile(file)) {
+			try {
+				byte[] decrypted = AESEncryption.decryptData(key, ByteBuffer.wrap(Files.readAllBytes(file)));
+				try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(decrypted)), StandardCharsets.UTF_8)) {
+					Data data = GSON.fromJson(reader, Data.class);
+					if (data != null && data.version == FILE_VERSION)
+						return new TransactionHistoryStore(file, key, data);
+				}
+			} catch (IOException | JsonParseException | GeneralSecurityException | BufferUnderflowException e) {
+				// The history will be downloaded again, for example because the wallet got a new cache key
+				e.printStackTrace();
+			}
+		}
+		return new TransactionHistoryStore(file, key, new Data());
+	}
+
+	public synchronized void save() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+			GSON.toJson(data, writer);
+		}
+		byte[] encrypted;
+		try {
+			encrypted = AESEncryption.encryptData(AESEncryption.generateNonce12(), key, bytes.toByteArray());
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+		Files.createDirectories(file.getParent());
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(temp, encrypted);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Combines what the stored transactions changed for the given addresses. Tokens whose amount did not change in total are left out.
+	 * @return The summaries of the stored transactions of the addresses, newest first, without duplicates
+	 */
+	public synchronized List<TransactionSummary> summaries(Collection<Address> addresses) {
+		Set<String> addressStrings = addresses.stream().map(Address::toString).collect(Collectors.toUnmodifiableSet());
+		if (summaryCache != null && addressStrings.equals(summaryAddresses))
+			return summaryCache;
+		LinkedHashMap<String, Change> combined = new LinkedHashMap<>();
+		for (String address : addressStrings) {
+			AddressState state = data.addresses.get(address);
+			if (state == null) continue;
+			for (String id : state.transactionIds) {
+				if (combined.containsKey(id)) continue;
+				Change total = new Change();
+				data.transactions.get(id).changes.forEach((changedAddress, change) -> {
+					if (!addressStrings.contains(changedAddress)) return;
+					total.erg += change.erg;
+					change.tokens.forEach((tokenId, amount) -> total.tokens.merge(tokenId, amount, Long::sum));
+				});
+				combined.put(id, total);
+			}
+		}
+		ArrayList<TransactionSummary> summaries = new ArrayList<>(combined.size());
+		combined.forEach((id, change) -> {
+			Header header = data.transactions.get(id);
+			change.tokens.values().removeIf(amount -> amount == 0);
+			String[] tokenIds = change.tokens.keySet().toArray(new String[0]);
+			String[] tokenNames = new String[tokenIds.length];
+			int[] tokenDecimals = new int[tokenIds.length];
+			long[] tokenDeltas = new long[tokenIds.length];
+			for (int i = 0; i < tokenIds.length; i++) {
+				TokenName token = data.tokens.get(tokenIds[i]);
+				tokenNames[i] = token == null ? null : token.name();
+				tokenDecimals[i] = token == null ? 0 : token.decimals();
+				tokenDeltas[i] = change.tokens.get(tokenIds[i]);
+			}
+			summaries.add(new TransactionSummary(id, header.timestamp, change.erg, tokenIds, tokenNames, tokenDecimals, tokenDeltas, header.inputCount, header.outputCount));
+		});
+		summaries.sort(Comparator.comparingLong(TransactionSummary::timestamp).reversed().thenComparing(TransactionSummary::id));
+		summaryAddresses = addressStrings;
+		summaryCache = Collections.unmodifiableList(summaries);
+		return summaryCache;
+	}
+
+	public synchronized boolean isComplete(Address address) {
+		AddressState state = data.addresses.get(address.toString());
+		return state != null && state.complete;
+	}
+
+	/**
+	 * Downloads the transactions of the address that are newer than the newest stored one.
+	 * If the address has never been synchronized, only the newest page is downloaded and the rest is left to {@link #backfill}.
+	 * @return whether any new transactions were found
+	 */
+	public boolean syncNewer(DefaultApi api, Address address) throws IOException {
+		int highWaterMark;
+		synchronized (this) {
+			AddressState state = data.addresses.get(address.toString());
+			highWaterMark = state == null ? -1 : state.highestHeight;
+		}
+		ArrayList<TransactionInfo> fetched = new ArrayList<>();
+		int offset = 0;
+		boolean reachedEnd;
+		while (true) {
+			List<TransactionInfo> page = fetchPage(api, address, offset, NEWER_PAGE_SIZE);
+			boolean reachedKnown = false;
+			for (TransactionInfo tx : page) {
+				// transactions at the high-water mark height itself are included because the previous page could have ended inside that block
+				if (highWaterMark != -1 && tx.getInclusionHeight() < highWaterMark) {
+					reachedKnown = true;
+					break;
+				}
+				fetched.add(tx);
+			}
+			offset += page.size();
+			reachedEnd = page.size() < NEWER_PAGE_SIZE;
+			if (reachedKnown || reachedEnd || highWaterMark == -1)
+				break;
+		}
+		return merge(address, fetched, reachedEnd);
+	}
+
+	/**
+	 * Downloads the next page of older transactions of the address
+	 * @return whether the full history of the address is now stored
+	 */
+	public boolean backfill(DefaultApi api, Address address) throws IOException {
+		int offset;
+		synchronized (this) {
+			AddressState state = data.addresses.get(address.toString());
+			if (state == null) throw new IllegalStateException("syncNewer must be called first");
+			if (state.complete) return true;
+			offset = state.transactionIds.size();
+		}
+		List<TransactionInfo> page = fetchPage(api, address, offset, BACKFILL_PAGE_SIZE);
+		boolean complete = page.size() < BACKFILL_PAGE_SIZE;
+		merge(address, page, complete);
+		return complete;
+	}
+
+	private synchronized boolean merge(Address address, List<TransactionInfo> fetched, boolean complete) {
+		AddressState state = data.addresses.computeIfAbsent(address.toString(), k -> new AddressState());
+		boolean changed = false;
+		for (TransactionInfo tx : fetched) {
+			Header header = data.transactions.get(tx.getId());
+			if (header == null) {
+				header = new Header();
+				header.timestamp = tx.getTimestamp();
+				header.inputCount = tx.getInputs().size();
+				header.outputCount = tx.getOutputs().size();
+				data.transactions.put(tx.getId(), header);
+			}
+			// The transaction can involve other stored addresses that have not been synchronized down to it yet
+			for (Map.Entry<String, Change> entry : changesOf(tx).entrySet()) {
+				if (header.changes.putIfAbsent(entry.getKey(), entry.getValue()) == null)
+					changed = true;
+			}
+			if (state.transactionIds.add(tx.getId())) {
+				state.highestHeight = Math.max(state.highestHeight, tx.getInclusionHeight());
+				changed = true;
+			}
+		}
+		if (complete) state.complete = true;
+		if (changed) summaryCache = null;
+		return changed;
+	}
+
+	/**
+	 * @return What the transaction changed for each of the stored addresses that it involves
+	 */
+	private Map<String, Change> changesOf(TransactionInfo tx) {
+		HashMap<String, Change> changes = new HashMap<>();
+		for (InputInfo input : tx.getInputs()) {
+			if (!data.addresses.containsKey(input.getAddress())) continue;
+			Change change = changes.computeIfAbsent(input.getAddress(), k -> new Change());
+			change.erg -= input.getValue();
+			for (AssetInstanceInfo asset : input.getAssets()) {
+				change.tokens.merge(asset.getTokenId(), -asset.getAmount(), Long::sum);
+				rememberToken(asset);
+			}
+		}
+		for (OutputInfo output : tx.getOutputs()) {
+			if (!data.addresses.containsKey(output.getAddress())) continue;
+			Change change = changes.computeIfAbsent(output.getAddress(), k -> new Change());
+			change.erg += output.getValue();
+			for (AssetInstanceInfo asset : output.getAssets()) {
+				change.tokens.merge(asset.getTokenId(), asset.getAmount(), Long::sum);
+				rememberToken(asset);
+			}
+		}
+		return changes;
+	}
+
+	private void rememberToken(AssetInstanceInfo asset) {
+		data.tokens.putIfAbsent(asset.getTokenId(), new TokenName(asset.getName(), Objects.requireNonNullElse(asset.getDecimals(), 0)));
+	}
+
+	/**
+	 * Downloads a transaction with its inputs and outputs
+	 */
+	public static TransactionInfo fetchTransaction(DefaultApi api, String id) throws IOException {
+		var response = api.getApiV1TransactionsP1(id).execute();
+		if (!response.isSuccessful() || response.body() == null)
+			throw new IOException("The explorer responded with HTTP status " + response.code());
+		return response.body();
+	}
+
+	static List<TransactionInfo> fetchPage(DefaultApi api, Address address, int offset, int limit) throws IOException {
+		var response = api.getApiV1AddressesP1Transactions(address.toString(), offset, limit, false).execute();
+		if (!response.isSuccessful() || response.body() == null)
+			throw new IOException("The explorer responded with HTTP status " + response.code());
+		return response.body().getItems();
+	}
+}
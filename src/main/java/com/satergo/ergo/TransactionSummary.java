@@ -0,0 +1,15 @@
+package com.satergo.ergo;
+
+/**
+ * What a transaction changed for a set of addresses, without the inputs and outputs.
+ * The token arrays are parallel; index i of each array refers to the same token.
+ * Tokens whose amount did not change are left out.
+ */
+public record TransactionSummary(String id, long timestamp, long ergDelta,
+								 String[] tokenIds, String[] tokenNames, int[] tokenDecimals, long[] tokenDeltas,
+								 int inputCount, int outputCount) {
+
+	public int tokenCount() {
+		return tokenIds.length;
+	}
+}
@@ -0,0 +1,295 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.*;
+import org.ergoplatform.explorer.client.DefaultApi;
+import org.ergoplatform.explorer.client.model.InputInfo;
+import org.ergoplatform.explorer.client.model.OutputInfo;
+import org.ergoplatform.explorer.client.model.TransactionInfo;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The unspent boxes of the addresses of a wallet, kept in memory so that transactions can be built
+ * without downloading every box of the wallet each time.
+ *
+ * <p>The first {@link #sync} of an address downloads all of its unspent boxes. Later ones only download the
+ * transactions of the address that were confirmed since then, remove the boxes that they spent and add the boxes
+ * that they created. The unconfirmed transactions are applied on top of that on every sync, like
+ * ExplorerAndPoolUnspentBoxesLoader does when chained transactions are allowed.
+ *
+ * <p>The wallet is synchronized in the background when it changes, so building a transaction with {@link #boxes(BlockchainContext, List)}
+ * usually only has to wait for a quick sync of the addresses that have not been synchronized within {@link #MAX_AGE}.
+ */
+public class UnspentBoxCache {
+
+	/** Everything is downloaded again after this time, in case a block that was synchronized has been orphaned */
+	private static final Duration FULL_SYNC_INTERVAL = Duration.ofHours(1);
+	/** Transactions submitted by this program are applied locally until the explorer knows about them */
+	private static final Duration SUBMITTED_EXPIRY = Duration.ofMinutes(2);
+	/** The interval of the change checks of the wallet page, boxes older than this are synchronized before they are used */
+	private static final Duration MAX_AGE = Duration.ofSeconds(10);
+	private static final int TRANSACTIONS_PAGE_SIZE = 100;
+	private static final int MAX_CONCURRENT_REQUESTS = 8;
+
+	private static class AddressState {
+		final LinkedHashMap<String, InputBox> confirmed = new LinkedHashMap<>();
+		/** Transactions at this height and above are applied on the next sync */
+		int syncedHeight;
+		Instant fullySyncedAt, syncedAt;
+		/** The last sync failed or could not apply everything */
+		boolean stale;
+		Set<String> unconfirmedSpent = Set.of();
+		List<InputBox> unconfirmedCreated = List.of();
+	}
+
+	private record Submitted(Set<String> spent, Map<String, List<InputBox>> created, Instant at) {}
+
+	private final NetworkType networkType;
+	private final DefaultApi api;
+	private final ConcurrentHashMap<String, AddressState> addresses = new ConcurrentHashMap<>();
+	private final ArrayList<Submitted> submitted = new ArrayList<>();
+
+	public UnspentBoxCache(NetworkType networkType) {
+		this.networkType = networkType;
+		this.api = new Retrofit.Builder()
+				.baseUrl(ErgoInterface.getExplorerUrl(networkType))
+				.addConverterFactory(GsonConverterFactory.create())
+				.build().create(DefaultApi.class);
+	}
+
+	public NetworkType networkType() {
+		return networkType;
+	}
+
+	/**
+	 * Brings the boxes of the addresses up to date (the addresses are synchronized in parallel)
+	 * @return All unspent boxes of the addresses
+	 */
+	public List<InputBox> sync(BlockchainContext ctx, List<Address> addresses) {
+		Semaphore permits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<?>> futures = new ArrayList<>(addresses.size());
+			for (Address address : addresses) {
+				futures.add(executor.submit(() -> {
+					permits.acquire();
+					try {
+						syncAddress(ctx, address);
+					} finally {
+						permits.release();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException re) throw re;
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		return allBoxes(addresses);
+	}
+
+	/**
+	 * Synchronizes the addresses that are stale or have not been synchronized within {@link #MAX_AGE}, the others are used as they were at the last sync
+	 * @return All unspent boxes of the addresses
+	 */
+	public List<InputBox> boxes(BlockchainContext ctx, List<Address> addresses) {
+		Instant oldest = Instant.now().minus(MAX_AGE);
+		List<Address> unsynchronized = addresses.stream().filter(address -> {
+			AddressState state = this.addresses.get(address.toString());
+			if (state == null) return true;
+			synchronized (state) {
+				return state.syncedAt == null || state.stale || state.syncedAt.isBefore(oldest);
+			}
+		}).toList();
+		if (!unsynchronized.isEmpty())
+			sync(ctx, unsynchronized);
+		return allBoxes(addresses);
+	}
+
+	private List<InputBox> allBoxes(List<Address> addresses) {
+		ArrayList<InputBox> boxes = new ArrayList<>();
+		for (Address address : addresses) {
+			boxes.addAll(boxes(address));
+		}
+		return boxes;
+	}
+
+	/**
+	 * @return The unspent boxes of the address as of the last sync, without making any requests
+	 */
+	public List<InputBox> boxes(Address address) {
+		String key = address.toString();
+		AddressState state = addresses.get(key);
+		LinkedHashMap<String, InputBox> boxes = new LinkedHashMap<>();
+		Set<String> spent = new HashSet<>();
+		if (state != null) {
+			synchronized (state) {
+				spent.addAll(state.unconfirmedSpent);
+				boxes.putAll(state.confirmed);
+				for (InputBox box : state.unconfirmedCreated) {
+					boxes.putIfAbsent(box.getId().toString(), box);
+				}
+			}
+		}
+		synchronized (submitted) {
+			submitted.removeIf(s -> s.at().plus(SUBMITTED_EXPIRY).isBefore(Instant.now()));
+			for (Submitted s : submitted) {
+				spent.addAll(s.spent());
+				for (InputBox box : s.created().getOrDefault(key, List.of())) {
+					boxes.putIfAbsent(box.getId().toString(), box);
+				}
+			}
+		}
+		boxes.keySet().removeAll(spent);
+		return new ArrayList<>(boxes.values());
+	}
+
+	/**
+	 * Applies a transaction that was just submitted, so that it is taken into account before the explorer has seen it
+	 */
+	public void applySubmitted(SignedTransaction signedTx) {
+		HashMap<String, List<InputBox>> created = new HashMap<>();
+		for (InputBox box : signedTx.getOutputsToSpend()) {
+			String address = Address.fromErgoTree(box.getErgoTree(), networkType).toString();
+			created.computeIfAbsent(address, k -> new ArrayList<>()).add(box);
+		}
+		synchronized (submitted) {
+			submitted.add(new Submitted(Set.copyOf(signedTx.getInputBoxesIds()), created, Instant.now()));
+		}
+	}
+
+	/**
+	 * Forgets the addresses that are not in the list, for example because they were removed from the wallet
+	 */
+	public void retainOnly(Collection<Address> addresses) {
+		Set<String> keep = new HashSet<>();
+		for (Address address : addresses) {
+			keep.add(address.toString());
+		}
+		this.addresses.keySet().retainAll(keep);
+	}
+
+	/**
+	 * Makes the next sync download everything again
+	 */
+	public void invalidate() {
+		addresses.clear();
+		synchronized (submitted) {
+			submitted.clear();
+		}
+	}
+
+	private void syncAddress(BlockchainContext ctx, Address address) {
+		AddressState state = addresses.computeIfAbsent(address.toString(), k -> new AddressState());
+		synchronized (state) {
+			try {
+				state.stale = false;
+				if (state.fullySyncedAt == null || state.fullySyncedAt.plus(FULL_SYNC_INTERVAL).isBefore(Instant.now()))
+					loadAll(ctx, address, state);
+				else applyConfirmed(ctx, address, state);
+				Set<String> unconfirmedSpent = ErgoInterface.getMempoolSpentBoxIds(address);
+				ArrayList<InputBox> unconfirmedCreated = new ArrayList<>();
+				int page = 0;
+				while (true) {
+					List<InputBox> result = ctx.getDataSource().getUnconfirmedUnspentBoxesFor(address, page++ * BlockchainContext.DEFAULT_LIMIT_FOR_API, BlockchainContext.DEFAULT_LIMIT_FOR_API);
+					unconfirmedCreated.addAll(result);
+					if (result.size() < BlockchainContext.DEFAULT_LIMIT_FOR_API)
+						break;
+				}
+				state.unconfirmedCreated = List.copyOf(unconfirmedCreated);
+				state.unconfirmedSpent = unconfirmedSpent;
+				state.syncedAt = Instant.now();
+			} catch (RuntimeException e) {
+				state.stale = true;
+				throw e;
+			}
+		}
+	}
+
+	private void loadAll(BlockchainContext ctx, Address address, AddressState state) {
+		// The height is taken first so that nothing confirmed while the pages are being loaded is missed
+		int height = ErgoInterface.getNetworkBlockHeight(networkType);
+		LinkedHashMap<String, InputBox> boxes = new LinkedHashMap<>();
+		int page = 0;
+		while (true) {
+			List<InputBox> result = ctx.getDataSource().getUnspentBoxesFor(address, page++ * BlockchainContext.DEFAULT_LIMIT_FOR_API, BlockchainContext.DEFAULT_LIMIT_FOR_API);
+			for (InputBox box : result) {
+				boxes.put(box.getId().toString(), box);
+			}
+			if (result.size() < BlockchainContext.DEFAULT_LIMIT_FOR_API)
+				break;
+		}
+		state.confirmed.clear();
+		state.confirmed.putAll(boxes);
+		state.syncedHeight = height;
+		state.fullySyncedAt = Instant.now();
+	}
+
+	private void applyConfirmed(BlockchainContext ctx, Address address, AddressState state) {
+		ArrayList<TransactionInfo> newer = new ArrayList<>();
+		int offset = 0;
+		while (true) {
+			List<TransactionInfo> page;
+			try {
+				page = TransactionHistoryStore.fetchPage(api, address, offset, TRANSACTIONS_PAGE_SIZE);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			boolean reachedSynced = false;
+			for (TransactionInfo tx : page) {
+				if (tx.getInclusionHeight() < state.syncedHeight) {
+					reachedSynced = true;
+					break;
+				}
+				newer.add(tx);
+			}
+			offset += page.size();
+			if (reachedSynced || page.size() < TRANSACTIONS_PAGE_SIZE)
+				break;
+		}
+		if (newer.isEmpty()) return;
+		String addressString = address.toString();
+		int highestHeight = state.syncedHeight;
+		HashSet<String> spent = new HashSet<>();
+		for (TransactionInfo tx : newer) {
+			highestHeight = Math.max(highestHeight, tx.getInclusionHeight());
+			for (InputInfo input : tx.getInputs()) {
+				spent.add(input.getBoxId());
+			}
+		}
+		ArrayList<String> created = new ArrayList<>();
+		for (TransactionInfo tx : newer) {
+			for (OutputInfo output : tx.getOutputs()) {
+				if (addressString.equals(output.getAddress()) && output.getSpentTransactionId() == null
+						&& !spent.contains(output.getBoxId()) && !state.confirmed.containsKey(output.getBoxId()))
+					created.add(output.getBoxId());
+			}
+		}
+		state.confirmed.keySet().removeAll(spent);
+		// The boxes are fetched from the node because the explorer models do not contain everything needed to spend them
+		if (!created.isEmpty()) {
+			try {
+				for (InputBox box : ctx.getBoxesById(created.toArray(new String[0]))) {
+					state.confirmed.put(box.getId().toString(), box);
+				}
+			} catch (ErgoClientException e) {
+				// The node has not got the block yet, the transactions are applied again on the next sync
+				state.stale = true;
+				return;
+			}
+		}
+		state.syncedHeight = highestHeight;
+	}
+}
@@ -0,0 +1,51 @@
+package com.satergo.ergo;
+
+import com.satergo.node.ErgoNodeAccess;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells when the balance of a wallet might have changed using the height of the chain and the IDs of the transactions in the mempool.
+ * The node is only asked for the transactions that have entered the mempool since the last check, one request for each,
+ * and their outputs are compared with the ErgoTrees of the wallet.
+ * Transactions that only spend from the wallet, for example from another copy of it, are noticed when they are confirmed.
+ */
+public class WalletChangeDetector {
+
+	private final ErgoNodeAccess nodeAccess;
+
+	private int height = -1;
+	private Set<String> mempool = Set.of(), relevant = Set.of();
+
+	public WalletChangeDetector(URI nodeApiAddress) {
+		this.nodeAccess = new ErgoNodeAccess(nodeApiAddress);
+	}
+
+	/**
+	 * The first call only records the current state
+	 * @return Whether a block has been added or a payment to one of the ErgoTrees has entered or left the mempool since the last call
+	 */
+	public synchronized boolean check(Set<String> ergoTreeHexes) {
+		ErgoNodeAccess.Status status = nodeAccess.getStatus();
+		// The explorer follows the tip of the network, so the height of a node that is still syncing is not used
+		int newHeight = status.networkHeight() != 0 ? status.networkHeight() : status.blockHeight();
+		Set<String> newMempool = nodeAccess.getUnconfirmedTransactionIds();
+		Set<String> newRelevant = new HashSet<>(relevant);
+		newRelevant.retainAll(newMempool);
+		// The transactions that were already in the mempool at the first call are not looked at, the ones paying to the wallet
+		// change the balance when they are confirmed, which is noticed from the height
+		if (height != -1) {
+			Set<String> added = new HashSet<>(newMempool);
+			added.removeAll(mempool);
+			if (!added.isEmpty())
+				newRelevant.addAll(nodeAccess.getUnconfirmedTransactionIdsWithOutputsTo(added, ergoTreeHexes));
+		}
+		boolean changed = height != -1 && (newHeight != height || !newRelevant.equals(relevant));
+		height = newHeight;
+		mempool = newMempool;
+		relevant = newRelevant;
+		return changed;
+	}
+}
@@ -73,9 +73,9 @@ public class ErgoPayPrompt extends SatPromptDialog<Boolean> {
 			}
 		}
 		// Subtract the amount of ERG and tokens that are sent to own addresses
+		Set<String> ownErgoTrees = Main.get().getWallet().ergoTreeHexes();
 		for (OutBox output : reducedTx.getOutputs()) {
-			Address to = Address.fromErgoTree(output.getErgoTree(), Main.programData().nodeNetworkType.get());
-			if (Main.get().getWallet().addressStream().anyMatch(a -> a.equals(to))) {
+			if (ownErgoTrees.contains(HexFormat.of().formatHex(output.getErgoTree().bytes()))) {
 				ergSpent -= output.getValue();
 				tokenLoop:
 				for (ErgoToken token : output.getTokens()) {
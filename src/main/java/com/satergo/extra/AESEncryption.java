@@ -2,15 +2,12 @@ package com.satergo.extra;
 
 import javax.crypto.*;
 import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 
 /**
  * Encryption / Decryption service using the AES algorithm
@@ -104,18 +101,25 @@ public class AESEncryption {
 		return decryptData(password, iv, encryptedData);
 	}
 
+	public static byte[] decryptData(KeyDerivation keyDerivation, char[] password, ByteBuffer encryptedData)
+			throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+			BadPaddingException, IllegalBlockSizeException, InvalidKeySpecException {
+
+		byte[] iv = new byte[12];
+		encryptedData.get(iv);
+
+		return decryptData(iv, keyDerivation.generateSecretKey(password, iv), encryptedData);
+	}
+
 	/**
-	 * Generates a 128-bit key from the given password and iv
+	 * Generates a 128-bit key from the given password and iv, with the parameters of {@link KeyDerivation#PBKDF2_LEGACY}
 	 *
 	 * @param password Password
 	 * @param iv Initialization vector
 	 * @return Secret key
 	 */
 	public static SecretKey generateSecretKey(char[] password, byte[] iv) throws NoSuchAlgorithmException, InvalidKeySpecException {
-		KeySpec spec = new PBEKeySpec(password, iv, 65536, 128); // AES-128
-		SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-		byte[] key = secretKeyFactory.generateSecret(spec).getEncoded();
-		return new SecretKeySpec(key, "AES");
+		return KeyDerivation.PBKDF2_LEGACY.generateSecretKey(password, iv);
 	}
 
 	public static byte[] generateNonce12() {
@@ -0,0 +1,140 @@
+package com.satergo.extra;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The parameters of the function that derives the AES-128 key from the password, stored in the header of a wallet file
+ * @param memoryCost In KiB, only used by Argon2id
+ */
+public record KeyDerivation(Algorithm algorithm, int iterations, int memoryCost, int parallelism) {
+
+	public enum Algorithm {
+		PBKDF2_HMAC_SHA1(0), ARGON2ID(1);
+
+		public final int id;
+
+		Algorithm(int id) {
+			this.id = id;
+		}
+
+		public static Algorithm fromId(int id) {
+			for (Algorithm algorithm : values()) {
+				if (algorithm.id == id) return algorithm;
+			}
+			throw new IllegalArgumentException("Unknown key derivation algorithm with ID " + id);
+		}
+	}
+
+	/** What wallet format version 1 always uses, see {@link AESEncryption#generateSecretKey} */
+	public static final KeyDerivation PBKDF2_LEGACY = new KeyDerivation(Algorithm.PBKDF2_HMAC_SHA1, 65536, 0, 1);
+
+	public static final Duration DEFAULT_TARGET_TIME = Duration.ofMillis(500);
+	private static final int ARGON2_MEMORY_COST = 32 * 1024;
+	private static final int MIN_ITERATIONS = 2, MAX_ITERATIONS = 1000;
+	/** 1 GiB, more than that cannot be expected to be available */
+	private static final int MAX_MEMORY_COST = 1024 * 1024;
+	private static final int MAX_PARALLELISM = 16;
+
+	public SecretKey generateSecretKey(char[] password, byte[] salt) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		return switch (algorithm) {
+			case PBKDF2_HMAC_SHA1 -> {
+				SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+				yield new SecretKeySpec(secretKeyFactory.generateSecret(new PBEKeySpec(password, salt, iterations, 128)).getEncoded(), "AES");
+			}
+			case ARGON2ID -> {
+				Argon2BytesGenerator generator = new Argon2BytesGenerator();
+				generator.init(new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+						.withVersion(Argon2Parameters.ARGON2_VERSION_13)
+						.withIterations(iterations)
+						.withMemoryAsKB(memoryCost)
+						.withParallelism(parallelism)
+						.withSalt(salt)
+						.build());
+				byte[] key = new byte[16];
+				generator.generateBytes(password, key);
+				yield new SecretKeySpec(key, "AES");
+			}
+		};
+	}
+
+	private static CompletableFuture<KeyDerivation> calibrated;
+
+	/**
+	 * Calibrates for {@link #DEFAULT_TARGET_TIME} in the background the first time it is called, and the result is used for the rest of the session.
+	 * It is called when a page that could need it is opened, so that it is usually ready when a key is derived.
+	 */
+	public static synchronized CompletableFuture<KeyDerivation> calibrated() {
+		if (calibrated == null)
+			calibrated = CompletableFuture.supplyAsync(() -> calibrate(DEFAULT_TARGET_TIME));
+		return calibrated;
+	}
+
+	/**
+	 * Finds the amount of Argon2id iterations that takes about the target time on this computer
+	 */
+	public static KeyDerivation calibrate(Duration targetTime) {
+		KeyDerivation probe = new KeyDerivation(Algorithm.ARGON2ID, 1, ARGON2_MEMORY_COST, 1);
+		char[] password = "calibration".toCharArray();
+		byte[] salt = new byte[12];
+		try {
+			// the first run is not measured, it includes class loading and warming up
+			probe.generateSecretKey(password, salt);
+			long start = System.nanoTime();
+			probe.generateSecretKey(password, salt);
+			long perIteration = Math.max(System.nanoTime() - start, 1);
+			int iterations = (int) Math.clamp(targetTime.toNanos() / perIteration, MIN_ITERATIONS, MAX_ITERATIONS);
+			return new KeyDerivation(Algorithm.ARGON2ID, iterations, ARGON2_MEMORY_COST, 1);
+		} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void write(DataOutputStream out) throws IOException {
+		out.writeByte(algorithm.id);
+		out.writeInt(iterations);
+		out.writeInt(memoryCost);
+		out.writeByte(parallelism);
+	}
+
+	/**
+	 * @throws IOException If the parameters are unknown or outside of the limits, which a damaged or malicious file could use
+	 *                     to make opening it take an unreasonable amount of time or memory
+	 */
+	public static KeyDerivation read(DataInputStream in) throws IOException {
+		int algorithmId = in.readUnsignedByte();
+		Algorithm algorithm;
+		try {
+			algorithm = Algorithm.fromId(algorithmId);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+		KeyDerivation keyDerivation = new KeyDerivation(algorithm, in.readInt(), in.readInt(), in.readUnsignedByte());
+		if (!keyDerivation.isWithinLimits())
+			throw new IOException("The key derivation parameters are outside of the limits: " + keyDerivation);
+		return keyDerivation;
+	}
+
+	private boolean isWithinLimits() {
+		return switch (algorithm) {
+			// only the legacy parameters are ever used with PBKDF2
+			case PBKDF2_HMAC_SHA1 -> iterations >= 1 && iterations <= PBKDF2_LEGACY.iterations && parallelism == 1;
+			// Argon2 requires at least 8 KiB of memory for every lane
+			case ARGON2ID -> iterations >= MIN_ITERATIONS && iterations <= MAX_ITERATIONS
+					&& parallelism >= 1 && parallelism <= MAX_PARALLELISM
+					&& memoryCost >= 8 * parallelism && memoryCost <= MAX_MEMORY_COST;
+		};
+	}
+}
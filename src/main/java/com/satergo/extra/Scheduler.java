@@ -0,0 +1,171 @@
+package com.satergo.extra;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Runs the repeating background work of the program, like refreshing the balance and polling the node, from a single timer thread.
+ * The work itself runs on virtual threads, so a slow job does not delay the others. Jobs that are not urgent run less often
+ * or not at all while the window is minimized or the program is offline, and catch up when that is no longer the case.
+ */
+public class Scheduler {
+
+	public enum Priority {
+		/** Always runs at its period */
+		HIGH,
+		/** Runs 4 times less often while the window is minimized or the program is offline */
+		NORMAL,
+		/** Does not run while the window is minimized or the program is offline */
+		LOW
+	}
+
+	private static final int SLOWDOWN = 4;
+
+	private static final Scheduler INSTANCE = new Scheduler();
+
+	public static Scheduler get() {
+		return INSTANCE;
+	}
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "Scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Set<Job> jobs = ConcurrentHashMap.newKeySet();
+	private volatile boolean minimized, offline;
+
+	/**
+	 * @param lastRun When the last run started, null if it has not run yet
+	 * @param lastFailure What the last failed run threw, null if none has failed
+	 */
+	public record Statistics(String name, Priority priority, long runs, long failures, Duration totalTime, Duration lastTime, Instant lastRun, Throwable lastFailure) {}
+
+	public final class Job {
+		private final String name;
+		private final Priority priority;
+		private final Duration period, jitter;
+		private final Runnable task;
+		private final long firstDue;
+
+		private ScheduledFuture<?> next;
+		private boolean running, cancelled;
+		private long lastEnd;
+		private long runs, failures, totalNanos, lastNanos;
+		private Instant lastRun;
+		private Throwable lastFailure;
+
+		private Job(String name, Priority priority, Duration initialDelay, Duration period, Duration jitter, Runnable task) {
+			this.name = name;
+			this.priority = priority;
+			this.period = period;
+			this.jitter = jitter;
+			this.task = task;
+			this.firstDue = System.nanoTime() + initialDelay.toNanos();
+		}
+
+		/**
+		 * @return The period in the current state of the program, or null if the job should not run
+		 */
+		private Duration currentPeriod() {
+			if (priority == Priority.HIGH || (!minimized && !offline)) return period;
+			return priority == Priority.NORMAL ? period.multipliedBy(SLOWDOWN) : null;
+		}
+
+		private synchronized void reschedule() {
+			if (next != null) next.cancel(false);
+			next = null;
+			if (cancelled || running) return;
+			Duration currentPeriod = currentPeriod();
+			if (currentPeriod == null) return;
+			long due = lastRun == null ? firstDue : lastEnd + currentPeriod.toNanos();
+			long delay = Math.max(0, due - System.nanoTime());
+			if (!jitter.isZero()) delay += ThreadLocalRandom.current().nextLong(jitter.toNanos() + 1);
+			next = timer.schedule(this::start, delay, TimeUnit.NANOSECONDS);
+		}
+
+		private synchronized void start() {
+			if (cancelled || running) return;
+			running = true;
+			next = null;
+			Thread.ofVirtual().name(name).start(this::run);
+		}
+
+		private void run() {
+			Instant started = Instant.now();
+			long start = System.nanoTime();
+			Throwable failure = null;
+			try {
+				task.run();
+			} catch (Throwable t) {
+				// The job is run again at its next time, which for example lets the node status poll wait until the node has started
+				failure = t;
+			}
+			long end = System.nanoTime();
+			synchronized (this) {
+				runs++;
+				if (failure != null) {
+					failures++;
+					lastFailure = failure;
+				}
+				lastNanos = end - start;
+				totalNanos += lastNanos;
+				lastRun = started;
+				lastEnd = end;
+				running = false;
+				reschedule();
+			}
+		}
+
+		/**
+		 * Stops the job. A run that has already started is finished.
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+			if (next != null) next.cancel(false);
+			next = null;
+			jobs.remove(this);
+		}
+
+		public synchronized Statistics statistics() {
+			return new Statistics(name, priority, runs, failures, Duration.ofNanos(totalNanos), Duration.ofNanos(lastNanos), lastRun, lastFailure);
+		}
+	}
+
+	/**
+	 * @param jitter Up to this much is randomly added to every delay, so that jobs with the same period do not wake up together
+	 */
+	public Job schedule(String name, Priority priority, Duration initialDelay, Duration period, Duration jitter, Runnable task) {
+		Job job = new Job(name, priority, initialDelay, period, jitter, task);
+		jobs.add(job);
+		job.reschedule();
+		return job;
+	}
+
+	/**
+	 * Runs the task once after the delay regardless of the state of the program
+	 */
+	public ScheduledFuture<?> scheduleOnce(String name, Duration delay, Runnable task) {
+		return timer.schedule(() -> Thread.ofVirtual().name(name).start(task), delay.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	public void setMinimized(boolean minimized) {
+		if (this.minimized == minimized) return;
+		this.minimized = minimized;
+		jobs.forEach(Job::reschedule);
+	}
+
+	public void setOffline(boolean offline) {
+		if (this.offline == offline) return;
+		this.offline = offline;
+		jobs.forEach(Job::reschedule);
+	}
+
+	public List<Statistics> statistics() {
+		return jobs.stream().map(Job::statistics).sorted(Comparator.comparing(Statistics::name)).toList();
+	}
+}
@@ -25,6 +25,8 @@ import org.ergoplatform.sdk.ErgoToken;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class TXOutputForm extends VBox implements Initializable {
 
@@ -138,11 +140,15 @@ public class TXOutputForm extends VBox implements Initializable {
 			}
 			tokensToSend[i] = new ErgoToken(tokenLine.tokenSummary.id(), ErgoInterface.longTokenAmount(tokenLine.getAmount(), tokenLine.tokenSummary.decimals()));
 		}
+		int creationHeight = txBuilder.getCtx().getHeight();
 		OutBoxBuilder outBoxBuilder = txBuilder.outBoxBuilder()
-				.contract(recipient.toErgoContract());
+				.contract(recipient.toErgoContract())
+				.creationHeight(creationHeight);
 		if (tokensToSend.length > 0)
 			outBoxBuilder.tokens(tokensToSend);
-		return dynamicMinimum ? ErgoInterface.buildWithMinimumBoxValue(outBoxBuilder, boxIndex) : outBoxBuilder.value(ErgoInterface.toNanoErg(amountFullErg)).build();
+		return dynamicMinimum
+				? ErgoInterface.buildWithMinimumBoxValue(outBoxBuilder, BoxSizeEstimator.Shape.of(recipient, tokensToSend, creationHeight, boxIndex))
+				: outBoxBuilder.value(ErgoInterface.toNanoErg(amountFullErg)).build();
 	}
 
 	/** @return empty if an error occurred (the user will have been informed) */
@@ -176,15 +182,17 @@ public class TXOutputForm extends VBox implements Initializable {
 			form.address.setText(ergoURI.address);
 			if (ergoURI.amount != null)
 				form.amount.setText(ergoURI.amount.toPlainString());
-			ergoURI.tokens.entrySet()
-					.parallelStream()
-					.map(entry -> new Pair<>(ErgoInterface.getTokenInfo(Main.programData().nodeNetworkType.get(), entry.getKey()), entry.getValue()))
-					.sequential()
-					.forEachOrdered(entry -> {
-						TokenLine tokenLine = new TokenLine(entry.getKey());
-						tokenLine.setAmount(entry.getValue());
-						form.tokenList.getChildren().add(tokenLine);
-					});
+			// Request all token information at once, then add the lines in the order of the URI
+			List<Pair<CompletableFuture<TokenInfo>, BigDecimal>> tokens = ergoURI.tokens.entrySet().stream()
+					.map(entry -> new Pair<>(TokenInfoCache.get(Main.programData().nodeNetworkType.get()).getAsync(entry.getKey()), entry.getValue()))
+					.toList();
+			for (Pair<CompletableFuture<TokenInfo>, BigDecimal> entry : tokens) {
+				TokenLine tokenLine = new TokenLine(entry.getKey().join());
+				tokenLine.setAmount(entry.getValue());
+				form.tokenList.getChildren().add(tokenLine);
+			}
+		} catch (CompletionException e) {
+			Utils.alertUnexpectedException(e.getCause());
 		} catch (Exception e) {
 			Utils.alertUnexpectedException(e);
 		}
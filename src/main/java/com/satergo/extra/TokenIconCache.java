@@ -0,0 +1,159 @@
+package com.satergo.extra;
+
+import com.satergo.Utils;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import org.ergoplatform.sdk.ErgoId;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Token icons are downloaded once in the largest size and stored in the settings directory, from where every size is scaled.
+ * A stored icon is revalidated with its ETag when it is older than {@link #REVALIDATE_AFTER}, and icons that do not exist
+ * are remembered for as long. The scaled images of the recently used icons are kept in memory.
+ *
+ * <p>The returned images are empty until the icon has loaded, and stay empty if the token has no icon.
+ */
+public class TokenIconCache {
+
+	private static final String SOURCE_URL = "https://raw.githubusercontent.com/Satergo/Resources/master/token-icons-36x36/";
+	private static final Duration REVALIDATE_AFTER = Duration.ofDays(7);
+	private static final int MAX_MEMORY_ENTRIES = 512;
+	private static final int MAX_CONCURRENT_DOWNLOADS = 4;
+
+	private static final TokenIconCache INSTANCE = new TokenIconCache(Utils.settingsDir().resolve("token-icons"));
+
+	public static TokenIconCache get() {
+		return INSTANCE;
+	}
+
+	private record Key(ErgoId tokenId, int size) {}
+
+	private final Path directory;
+	private final LinkedHashMap<Key, WritableImage> memory = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, WritableImage> eldest) {
+			return size() > MAX_MEMORY_ENTRIES;
+		}
+	};
+	private final ConcurrentHashMap<ErgoId, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+	private final ExecutorService loader = Executors.newVirtualThreadPerTaskExecutor();
+	private final Semaphore downloads = new Semaphore(MAX_CONCURRENT_DOWNLOADS);
+
+	private TokenIconCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param size The width and height of the image
+	 */
+	public Image icon(ErgoId tokenId, int size) {
+		Key key = new Key(tokenId, size);
+		WritableImage image;
+		synchronized (memory) {
+			image = memory.get(key);
+			if (image != null) return image;
+			image = new WritableImage(size, size);
+			memory.put(key, image);
+		}
+		WritableImage target = image;
+		source(tokenId).thenAccept(png -> {
+			if (png == null) return;
+			Image scaled = new Image(new ByteArrayInputStream(png), size, size, true, true);
+			if (scaled.isError()) return;
+			Platform.runLater(() -> target.getPixelWriter().setPixels(0, 0,
+					(int) Math.min(size, scaled.getWidth()), (int) Math.min(size, scaled.getHeight()), scaled.getPixelReader(), 0, 0));
+		}).exceptionally(t -> {
+			// Nothing is remembered when the icon could not be loaded, so that it is tried again the next time it is needed
+			synchronized (memory) {
+				memory.remove(key, target);
+			}
+			return null;
+		});
+		return image;
+	}
+
+	/**
+	 * @return The PNG file of the icon, or null if the token has no icon
+	 */
+	private CompletableFuture<byte[]> source(ErgoId tokenId) {
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		CompletableFuture<byte[]> existing = inFlight.putIfAbsent(tokenId, future);
+		if (existing != null) return existing;
+		loader.execute(() -> {
+			try {
+				future.complete(load(tokenId));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			} finally {
+				inFlight.remove(tokenId);
+			}
+		});
+		return future;
+	}
+
+	private byte[] load(ErgoId tokenId) throws IOException, InterruptedException {
+		Path png = directory.resolve(tokenId + ".png"), eTag = directory.resolve(tokenId + ".etag"), missing = directory.resolve(tokenId + ".missing");
+		if (isFresh(missing)) return null;
+		if (isFresh(png)) return Files.readAllBytes(png);
+		HttpRequest.Builder request = Utils.httpRequestBuilder().uri(URI.create(SOURCE_URL + tokenId + ".png"));
+		if (Files.isRegularFile(png) && Files.isRegularFile(eTag))
+			request.header("If-None-Match", Files.readString(eTag));
+		HttpResponse<byte[]> response;
+		downloads.acquire();
+		try {
+			response = Utils.HTTP.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+		} catch (IOException e) {
+			// An old icon is better than none
+			if (Files.isRegularFile(png)) return Files.readAllBytes(png);
+			throw e;
+		} finally {
+			downloads.release();
+		}
+		Files.createDirectories(directory);
+		switch (response.statusCode()) {
+			case 200 -> {
+				Path temp = directory.resolve(tokenId + ".png.tmp");
+				Files.write(temp, response.body());
+				Files.move(temp, png, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				if (response.headers().firstValue("ETag").isPresent())
+					Files.writeString(eTag, response.headers().firstValue("ETag").get());
+				else Files.deleteIfExists(eTag);
+				Files.deleteIfExists(missing);
+				return response.body();
+			}
+			case 304 -> {
+				Files.setLastModifiedTime(png, FileTime.from(Instant.now()));
+				return Files.readAllBytes(png);
+			}
+			case 404 -> {
+				Files.deleteIfExists(png);
+				Files.deleteIfExists(eTag);
+				Files.writeString(missing, "");
+				return null;
+			}
+			default -> {
+				if (Files.isRegularFile(png)) return Files.readAllBytes(png);
+				throw new IOException("Unexpected response code " + response.statusCode() + " for the icon of " + tokenId);
+			}
+		}
+	}
+
+	private static boolean isFresh(Path file) throws IOException {
+		return Files.isRegularFile(file) && Files.getLastModifiedTime(file).toInstant().plus(REVALIDATE_AFTER).isAfter(Instant.now());
+	}
+}
@@ -0,0 +1,98 @@
+package com.satergo.extra;
+
+import com.satergo.Main;
+import com.satergo.ergo.TokenBalance;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.util.StringConverter;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * The tokens of a balance as a searchable and sortable list, for showing them in a virtual flow
+ */
+public class TokenList {
+
+	public enum Order {
+		WALLET(null),
+		NAME(Comparator.comparing(token -> token.name() == null ? "" : token.name(), String.CASE_INSENSITIVE_ORDER)),
+		AMOUNT(Comparator.comparing(TokenBalance::fullAmount).reversed());
+
+		private final Comparator<TokenBalance> comparator;
+
+		Order(Comparator<TokenBalance> comparator) {
+			this.comparator = comparator;
+		}
+
+		public static final StringConverter<Order> TO_NAME_CONVERTER = new StringConverter<>() {
+			@Override
+			public String toString(Order order) {
+				return order == null ? null : Main.lang("tokenOrder." + order.name().toLowerCase(Locale.ROOT));
+			}
+
+			@Override
+			public Order fromString(String string) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public final SimpleStringProperty search = new SimpleStringProperty("");
+	public final SimpleObjectProperty<Order> order = new SimpleObjectProperty<>(Order.WALLET);
+
+	private final ObservableList<TokenBalance> tokens = FXCollections.observableArrayList();
+	private final SortedList<TokenBalance> shown;
+
+	public TokenList() {
+		FilteredList<TokenBalance> filtered = new FilteredList<>(tokens);
+		filtered.predicateProperty().bind(Bindings.createObjectBinding(() -> matching(search.get()), search));
+		shown = new SortedList<>(filtered);
+		shown.comparatorProperty().bind(Bindings.createObjectBinding(() -> order.get().comparator, order));
+	}
+
+	private static Predicate<TokenBalance> matching(String search) {
+		if (search == null || search.isBlank()) return null;
+		String lowerCase = search.strip().toLowerCase(Locale.ROOT);
+		return token -> token.id().startsWith(lowerCase) || (token.name() != null && token.name().toLowerCase(Locale.ROOT).contains(lowerCase));
+	}
+
+	/**
+	 * If the tokens are the same ones in the same order, only the changed ones are replaced so that the other cells are left alone
+	 */
+	public void setAll(List<TokenBalance> newTokens) {
+		boolean sameIds = tokens.size() == newTokens.size();
+		for (int i = 0; sameIds && i < tokens.size(); i++) {
+			sameIds = tokens.get(i).id().equals(newTokens.get(i).id());
+		}
+		if (!sameIds) {
+			tokens.setAll(newTokens);
+			return;
+		}
+		for (int i = 0; i < newTokens.size(); i++) {
+			if (!tokens.get(i).equals(newTokens.get(i)))
+				tokens.set(i, newTokens.get(i));
+		}
+	}
+
+	/**
+	 * @return Every token regardless of the search
+	 */
+	public List<TokenBalance> all() {
+		return tokens;
+	}
+
+	/**
+	 * @return The tokens that match the search, in the chosen order
+	 */
+	public ObservableList<TokenBalance> shown() {
+		return shown;
+	}
+}
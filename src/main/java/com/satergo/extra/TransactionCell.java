@@ -5,18 +5,16 @@ import com.satergo.Load;
 import com.satergo.Main;
 import com.satergo.Utils;
 import com.satergo.ergo.ErgoInterface;
-import com.satergo.ergo.TokenSummary;
+import com.satergo.ergo.TransactionSummary;
+import javafx.application.Platform;
 import javafx.animation.*;
 import javafx.beans.binding.DoubleBinding;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
-import javafx.fxml.Initializable;
 import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.input.MouseButton;
@@ -24,31 +22,39 @@ import javafx.scene.layout.*;
 import javafx.util.Duration;
 import org.ergoplatform.appkit.Address;
 import org.ergoplatform.explorer.client.model.AssetInstanceInfo;
-import org.ergoplatform.explorer.client.model.InputInfo;
-import org.ergoplatform.explorer.client.model.OutputInfo;
 import org.ergoplatform.explorer.client.model.TransactionInfo;
 import org.fxmisc.flowless.Cell;
 import org.fxmisc.flowless.VirtualFlow;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 
 import java.math.BigDecimal;
-import java.net.URL;
 import java.text.DecimalFormat;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
-import java.util.*;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-public class TransactionCell extends BorderPane implements Initializable {
+/**
+ * A transaction history entry. It can be reused for another transaction using {@link #setTransaction},
+ * see for example TransactionsCtrl which displays these in a VirtualFlow.
+ * Only the summary is kept, the inputs and outputs are loaded when the entry is expanded.
+ */
+public class TransactionCell extends BorderPane {
 
 	// This is not static because the decimal format symbols need to be reselected when the Locale is changed
 	private final DecimalFormat FORMAT_TOTAL = new DecimalFormat("+0.000000000;-0.000000000");
 
-	private final TransactionInfo tx;
+	private TransactionSummary summary;
 	private final Set<String> myAddresses;
+	private final Function<String, CompletableFuture<TransactionInfo>> detailsLoader;
+	// IDs of the transactions that are expanded, shared between all cells of a list so that the state survives reuse
+	private final Set<String> expandedIds;
 	@FXML private Label dateTime;
 	@FXML private Hyperlink tokens;
 	@FXML private Label totalCoins;
@@ -78,25 +84,30 @@ public class TransactionCell extends BorderPane implements Initializable {
 		return transition;
 	}
 
-	private final long ergDiff;
-	public TransactionCell(TransactionInfo tx, Set<Address> myAddresses) {
-		this.tx = tx;
+	private boolean contentCreated = false;
+	// true while the expansion state is being restored for a new transaction, in which case it is not animated
+	private boolean restoringExpansion = false;
+
+	/**
+	 * @param detailsLoader Loads the full transaction by its ID, used for the inputs and outputs when expanded
+	 */
+	public TransactionCell(Set<Address> myAddresses, Set<String> expandedIds, Function<String, CompletableFuture<TransactionInfo>> detailsLoader) {
 		// Convert my addresses to string to avoid constantly converting the API strings into Address objects
 		this.myAddresses = myAddresses.stream().map(Address::toString).collect(Collectors.toUnmodifiableSet());
-		ergDiff = totalReceived(tx, this.myAddresses) - totalSent(tx, this.myAddresses);
+		this.expandedIds = expandedIds;
+		this.detailsLoader = detailsLoader;
 		Load.thisFxml(this, "/tx-cell.fxml");
-		getStyleClass().add(ergDiff >= 0 ? "green" : "red");
 		top.setOnMouseClicked(e -> {
 			if (e.getButton() == MouseButton.PRIMARY)
 				setExpanded(!isExpanded());
 		});
 		// context menu
 		MenuItem copyTxId = new MenuItem(Main.lang("copyTransactionId"));
-		copyTxId.setOnAction(e -> Utils.copyStringToClipboard(tx.getId()));
+		copyTxId.setOnAction(e -> Utils.copyStringToClipboard(summary.id()));
 		MenuItem copyErgAmount = new MenuItem(Main.lang("copyErgAmount"));
-		copyErgAmount.setOnAction(e -> Utils.copyStringToClipboard(FormatNumber.ergExact(ErgoInterface.toFullErg(ergDiff))));
+		copyErgAmount.setOnAction(e -> Utils.copyStringToClipboard(FormatNumber.ergExact(ErgoInterface.toFullErg(summary.ergDelta()))));
 		MenuItem viewOnExplorer = new MenuItem("View on explorer");
-		viewOnExplorer.setOnAction(e -> Utils.showDocument(Utils.explorerTransactionUrl(tx.getId())));
+		viewOnExplorer.setOnAction(e -> Utils.showDocument(Utils.explorerTransactionUrl(summary.id())));
 		ContextMenu context = new ContextMenu(copyTxId, copyErgAmount, viewOnExplorer);
 		top.setOnContextMenuRequested(e -> {
 			if (context.isShowing()) context.hide();
@@ -111,22 +122,63 @@ public class TransactionCell extends BorderPane implements Initializable {
 			}
 		});
 		expanded.addListener((observable, oldValue, newValue) -> {
+			if (restoringExpansion) return;
+			if (newValue) expandedIds.add(summary.id());
+			else expandedIds.remove(summary.id());
+			// Create the content on the first time this cell is expanded
+			if (newValue && !contentCreated)
+				createContent();
 			transitionStartValue = getTransition();
 			doAnimationTransition();
 		});
-		// Create the content on the first time this cell is expanded
-		expanded.addListener(new ChangeListener<>() {
-			@Override
-			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
-				if (newValue) {
-					createContent();
-					expanded.removeListener(this);
-				}
+	}
+
+	public void setTransaction(TransactionSummary summary) {
+		this.summary = summary;
+		getStyleClass().removeAll("green", "red");
+		getStyleClass().add(summary.ergDelta() >= 0 ? "green" : "red");
+		ZonedDateTime time = Instant.ofEpochMilli(summary.timestamp()).atZone(ZoneId.systemDefault());
+		dateTime.setText(time.format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)));
+		totalCoins.setText(FORMAT_TOTAL.format(ErgoInterface.toFullErg(summary.ergDelta())) + " ERG");
+		tokens.setVisible(summary.tokenCount() > 0);
+		tokens.setOnAction(event -> {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < summary.tokenCount(); i++) {
+				BigDecimal amount = ErgoInterface.fullTokenAmount(summary.tokenDeltas()[i], summary.tokenDecimals()[i]);
+				String name = summary.tokenNames()[i] == null || summary.tokenNames()[i].isBlank() ? Main.lang("unnamed_parentheses") : summary.tokenNames()[i];
+				if (i > 0) text.append('\n');
+				text.append(name).append(": ").append(amount.compareTo(BigDecimal.ZERO) > 0 ? "+" : "").append(amount.toPlainString());
 			}
+			Utils.alert(Alert.AlertType.INFORMATION, text.toString());
 		});
+		// Restore the expansion state of this transaction without animating
+		if (timeline != null) timeline.stop();
+		bottom.getChildren().clear();
+		contentCreated = false;
+		boolean expand = expandedIds.contains(summary.id());
+		restoringExpansion = true;
+		setExpanded(expand);
+		restoringExpansion = false;
+		setTransition(expand ? 1 : 0);
+		bottomContainer.setVisible(expand);
+		if (expand) createContent();
 	}
 
 	private void createContent() {
+		contentCreated = true;
+		String id = summary.id();
+		detailsLoader.apply(id).whenComplete((tx, t) -> Platform.runLater(() -> {
+			// the cell could have been reused for another transaction while loading
+			if (summary == null || !summary.id().equals(id) || !bottom.getChildren().isEmpty()) return;
+			if (t != null) {
+				Utils.alertUnexpectedException(t);
+				return;
+			}
+			if (tx != null) createContent(tx);
+		}));
+	}
+
+	private void createContent(TransactionInfo tx) {
 		var inputFlow = VirtualFlow.createVertical(FXCollections.observableList(tx.getInputs()), input ->
 				Cell.wrapNode(createInOut(TransactionInOut.Type.INPUT, input.getAddress(), input.getValue(), input.getAssets())));
 		var outputFlow = VirtualFlow.createVertical(FXCollections.observableList(tx.getOutputs()), output ->
@@ -209,61 +261,4 @@ public class TransactionCell extends BorderPane implements Initializable {
 		super.layoutChildren();
 	}
 
-	@Override
-	public void initialize(URL location, ResourceBundle resources) {
-		ZonedDateTime time = Instant.ofEpochMilli(tx.getTimestamp()).atZone(ZoneId.systemDefault());
-		dateTime.setText(time.format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)));
-		totalCoins.setText(FORMAT_TOTAL.format(ErgoInterface.toFullErg(ergDiff)) + " ERG");
-		Map<TokenSummary, Long> tokensSent = totalTokens(tx, TransactionInOut.Type.INPUT, myAddresses);
-		Map<TokenSummary, Long> tokensReceived = totalTokens(tx, TransactionInOut.Type.OUTPUT, myAddresses);
-		HashMap<TokenSummary, Long> totalTokens = new HashMap<>(tokensReceived);
-		tokensSent.forEach((t, a) -> {
-			if (totalTokens.containsKey(t)) {
-				totalTokens.put(t, totalTokens.get(t) - a);
-			} else {
-				totalTokens.put(t, -a);
-			}
-		});
-		totalTokens.values().removeIf(amount -> amount == 0L);
-		tokens.setVisible(!totalTokens.isEmpty());
-		tokens.setOnAction(event -> {
-			Utils.alert(Alert.AlertType.INFORMATION, totalTokens.entrySet().stream().map(e -> {
-				BigDecimal amount = ErgoInterface.fullTokenAmount(e.getValue(), e.getKey().decimals());
-				String name = e.getKey().name().isBlank() ? Main.lang("unnamed_parentheses") : e.getKey().name();
-				return name + ": " + (amount.compareTo(BigDecimal.ZERO) > 0 ? "+" : "") + amount.toPlainString();
-			}).collect(Collectors.joining("\n")));
-		});
-	}
-
-	// utils
-
-	private static long totalReceived(TransactionInfo tx, Set<String> myAddresses) {
-		return tx.getOutputs().stream().filter(info -> myAddresses.contains(info.getAddress())).mapToLong(OutputInfo::getValue).sum();
-	}
-
-	private static long totalSent(TransactionInfo tx, Set<String> myAddresses) {
-		return tx.getInputs().stream().filter(info -> myAddresses.contains(info.getAddress())).mapToLong(InputInfo::getValue).sum();
-	}
-
-	private static Map<TokenSummary, Long> totalTokens(TransactionInfo tx, TransactionInOut.Type dir, Set<String> myAddresses) {
-		record TokenSummaryInfo(String id, int decimals, String name) implements TokenSummary {}
-
-		HashMap<TokenSummary, Long> total = new HashMap<>();
-		List<?> list = switch (dir) {
-			case INPUT -> tx.getInputs();
-			case OUTPUT -> tx.getOutputs();
-		};
-		for (Object ioput : list) {
-			if (!myAddresses.contains((dir == TransactionInOut.Type.INPUT ? ((InputInfo) ioput).getAddress() : ((OutputInfo) ioput).getAddress())))
-				continue;
-			for (AssetInstanceInfo a : (dir == TransactionInOut.Type.INPUT ? ((InputInfo) ioput).getAssets() : ((OutputInfo) ioput).getAssets())) {
-				TokenSummary tokenSummary = new TokenSummaryInfo(a.getTokenId(), Objects.requireNonNullElse(a.getDecimals(), 0), a.getName());
-				if (total.containsKey(tokenSummary)) {
-					total.put(tokenSummary, total.get(tokenSummary) + a.getAmount());
-				} else total.put(tokenSummary, a.getAmount());
-			}
-		}
-		return Collections.unmodifiableMap(total);
-	}
-
 }
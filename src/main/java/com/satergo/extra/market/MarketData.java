@@ -3,9 +3,10 @@ package com.satergo.extra.market;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.satergo.Utils;
+import com.satergo.ergo.ErgoInterface;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.collections.ObservableMap;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -13,27 +14,43 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.net.URI;
 import java.net.http.HttpResponse;
+import java.util.HashMap;
 import java.util.List;
 
 public class MarketData {
 
 	// The current value of 1 ERG, in the user's chosen currency.
 	public final SimpleObjectProperty<BigDecimal> ergValue = new SimpleObjectProperty<>();
-	public final ObservableList<TokenPrice> tokenPrices = FXCollections.observableArrayList();
+	/**
+	 * The amount of a token that 1 ERG buys, by token ID. Only markets against ERG are kept.
+	 * It is updated in place, so map listeners are only told about the tokens whose price changed.
+	 */
+	public final ObservableMap<String, BigDecimal> tokenPrices = FXCollections.observableHashMap();
 
 	public void updateTokenPrices() throws IOException, InterruptedException {
 		try {
-			List<TokenPrice> prices = fetchErgoDexTokenPrices();
-			Utils.runLaterOrNow(() -> tokenPrices.setAll(prices));
+			HashMap<String, BigDecimal> prices = new HashMap<>();
+			for (TokenPrice price : fetchErgoDexTokenPrices()) {
+				if (price.baseId().equals(ErgoInterface.ERG_ID) && price.lastPrice() != null && price.lastPrice().signum() > 0)
+					prices.put(price.quoteId(), price.lastPrice());
+			}
+			Utils.runLaterOrNow(() -> {
+				tokenPrices.keySet().retainAll(prices.keySet());
+				prices.forEach((tokenId, price) -> {
+					BigDecimal old = tokenPrices.get(tokenId);
+					if (old == null || old.compareTo(price) != 0)
+						tokenPrices.put(tokenId, price);
+				});
+			});
 		} catch (IOException | InterruptedException e) {
-			tokenPrices.clear();
+			Utils.runLaterOrNow(tokenPrices::clear);
 			throw e;
 		}
 	}
 
 	/** Can return null */
 	public BigDecimal tokensPerErg(String tokenId) {
-		return tokenPrices.stream().filter(p -> p.baseId.equals("0".repeat(64)) && p.quoteId.equals(tokenId)).findAny().map(TokenPrice::lastPrice).orElse(null);
+		return tokenPrices.get(tokenId);
 	}
 
 	public BigDecimal ergPriceOfToken(String tokenId) {
@@ -41,8 +58,8 @@ public class MarketData {
 		return tokensPerErg == null ? null : BigDecimal.ONE.divide(tokensPerErg, new MathContext(9, RoundingMode.HALF_EVEN));
 	}
 
-
-	public record TokenPrice(String id, String baseId, String baseSymbol, String quoteId, BigDecimal lastPrice) {
+	// Only the fields that are used are deserialized
+	public record TokenPrice(String baseId, String quoteId, BigDecimal lastPrice) {
 	}
 
 	public static List<TokenPrice> fetchErgoDexTokenPrices() throws IOException, InterruptedException {
@@ -0,0 +1,155 @@
+package com.satergo.extra.market;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Asks the price source chosen by the user, and uses its answer if it arrives within {@link #LATENCY_BUDGET}.
+ * If it does not, or it fails, the other sources that support the currency are asked as well and the first answer of any of them is used.
+ * Prices are cached for {@link #TTL}, shared by every wallet, and a source that responds with 429 Too Many Requests is not asked again for a while.
+ */
+public class PriceAggregator {
+
+	private static final Duration TTL = Duration.ofSeconds(30);
+	private static final Duration LATENCY_BUDGET = Duration.ofSeconds(2);
+	/** The requests of the sources time out after 10 seconds */
+	private static final Duration TIMEOUT = Duration.ofSeconds(12);
+	private static final Duration MIN_BACKOFF = Duration.ofMinutes(1), MAX_BACKOFF = Duration.ofMinutes(30);
+
+	private static final PriceAggregator INSTANCE = new PriceAggregator();
+
+	public static PriceAggregator get() {
+		return INSTANCE;
+	}
+
+	private record QuoteKey(PriceSource preferred, PriceCurrency currency) {}
+	private record Quote(BigDecimal price, long fetchedAt) {}
+	private record Backoff(long until, Duration length) {}
+
+	private final ConcurrentHashMap<QuoteKey, Quote> quotes = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<QuoteKey, CompletableFuture<BigDecimal>> inFlight = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<PriceSource, Backoff> backoffs = new ConcurrentHashMap<>();
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * @param preferred The source chosen by the user. It is asked even if it is backing off when no other source can be asked.
+	 * @throws IOException If every source failed to be reached
+	 */
+	public BigDecimal fetchPrice(PriceSource preferred, PriceCurrency currency) throws IOException {
+		QuoteKey key = new QuoteKey(preferred, currency);
+		Quote quote = quotes.get(key);
+		if (quote != null && System.nanoTime() - quote.fetchedAt() < TTL.toNanos())
+			return quote.price();
+		// Concurrent requests for the same currency share the answer
+		CompletableFuture<BigDecimal> future = new CompletableFuture<>();
+		CompletableFuture<BigDecimal> existing = inFlight.putIfAbsent(key, future);
+		if (existing == null) {
+			try {
+				BigDecimal price = aggregate(preferred, currency);
+				quotes.put(key, new Quote(price, System.nanoTime()));
+				future.complete(price);
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			} finally {
+				inFlight.remove(key);
+			}
+		}
+		try {
+			return (existing == null ? future : existing).get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe) throw ioe;
+			if (e.getCause() instanceof RuntimeException re) throw re;
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private BigDecimal aggregate(PriceSource preferred, PriceCurrency currency) throws IOException {
+		long now = System.nanoTime();
+		List<PriceSource> hedges = Arrays.stream(PriceSource.values())
+				.filter(source -> source != preferred && supports(source, currency) && !isBackingOff(source, now))
+				.toList();
+		ArrayList<CompletableFuture<BigDecimal>> answers = new ArrayList<>();
+		if ((supports(preferred, currency) && !isBackingOff(preferred, now)) || hedges.isEmpty()) {
+			CompletableFuture<BigDecimal> answer = CompletableFuture.supplyAsync(() -> fetch(preferred, currency), executor);
+			answers.add(answer);
+			try {
+				return answer.get(LATENCY_BUDGET.toMillis(), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException | ExecutionException ignored) {
+				// The other sources are asked, the preferred one can still answer first
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		hedges.forEach(source -> answers.add(CompletableFuture.supplyAsync(() -> fetch(source, currency), executor)));
+		CompletableFuture<Void> all = CompletableFuture.allOf(answers.toArray(new CompletableFuture[0]));
+		CompletableFuture<BigDecimal> first = new CompletableFuture<>();
+		answers.forEach(answer -> answer.thenAccept(first::complete));
+		// The answers may complete before their thenAccept has run, so they are checked again here
+		all.whenComplete((v, t) -> answers.stream().filter(answer -> !answer.isCompletedExceptionally()).findFirst()
+				.ifPresentOrElse(answer -> first.complete(answer.join()), () -> first.completeExceptionally(failure(answers))));
+		try {
+			return first.get(TIMEOUT.minus(LATENCY_BUDGET).toMillis(), TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe) throw ioe;
+			if (e.getCause() instanceof RuntimeException re) throw re;
+			throw new RuntimeException(e.getCause());
+		} catch (TimeoutException e) {
+			throw new IOException("No price source answered in time", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static boolean supports(PriceSource source, PriceCurrency currency) {
+		return source.supportedCurrencies.contains(currency == PriceCurrency.SAT ? PriceCurrency.BTC : currency);
+	}
+
+	private boolean isBackingOff(PriceSource source, long now) {
+		Backoff backoff = backoffs.get(source);
+		return backoff != null && now - backoff.until() < 0;
+	}
+
+	private BigDecimal fetch(PriceSource source, PriceCurrency currency) {
+		try {
+			BigDecimal price = source.fetchPrice(currency);
+			backoffs.remove(source);
+			return price;
+		} catch (RateLimitedException e) {
+			Backoff previous = backoffs.get(source);
+			Duration length = previous == null ? MIN_BACKOFF : previous.length().multipliedBy(2);
+			if (length.compareTo(MAX_BACKOFF) > 0) length = MAX_BACKOFF;
+			if (e.retryAfter != null && e.retryAfter.compareTo(length) > 0) length = e.retryAfter;
+			backoffs.put(source, new Backoff(System.nanoTime() + length.toNanos(), length));
+			throw new UncheckedIOException(e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return An IOException if any source could not be reached, as that is what an unavailable connection looks like, otherwise the first failure
+	 */
+	private static Throwable failure(List<CompletableFuture<BigDecimal>> answers) {
+		ArrayList<Throwable> failures = new ArrayList<>();
+		for (CompletableFuture<BigDecimal> answer : answers) {
+			answer.exceptionally(t -> {
+				Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+				failures.add(cause instanceof UncheckedIOException uioe ? uioe.getCause() : cause);
+				return null;
+			});
+		}
+		return failures.stream().filter(t -> t instanceof IOException).findFirst()
+				.orElse(failures.getFirst());
+	}
+}
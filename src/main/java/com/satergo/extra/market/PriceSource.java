@@ -24,21 +24,11 @@ public enum PriceSource {
 		@Override
 		protected BigDecimal fetchPriceInternal(PriceCurrency priceCurrency) throws IOException {
 			if (priceCurrency == PriceCurrency.USD || priceCurrency == PriceCurrency.EUR) {
-				HttpRequest request = Utils.httpRequestBuilder().uri(URI.create("https://api.kucoin.com/api/v1/prices?base=" + priceCurrency.uc() + "&currencies=ERG")).timeout(Duration.ofSeconds(10)).build();
-				try {
-					JsonObject response = JsonParser.object().from(HTTP.send(request, HttpResponse.BodyHandlers.ofString()).body());
-					return new BigDecimal(response.getObject("data").getString("ERG"));
-				} catch (JsonParserException | InterruptedException e) {
-					throw new RuntimeException(e);
-				}
+				JsonObject response = getJson("https://api.kucoin.com/api/v1/prices?base=" + priceCurrency.uc() + "&currencies=ERG");
+				return new BigDecimal(response.getObject("data").getString("ERG"));
 			} else if (priceCurrency == PriceCurrency.BTC) {
-				HttpRequest request = Utils.httpRequestBuilder().uri(URI.create("https://api.kucoin.com/api/v1/market/orderbook/level1?symbol=ERG-BTC")).build();
-				try {
-					JsonObject response = JsonParser.object().from(HTTP.send(request, HttpResponse.BodyHandlers.ofString()).body());
-					return new BigDecimal(response.getObject("data").getString("price"));
-				} catch (JsonParserException | InterruptedException e) {
-					throw new RuntimeException(e);
-				}
+				JsonObject response = getJson("https://api.kucoin.com/api/v1/market/orderbook/level1?symbol=ERG-BTC");
+				return new BigDecimal(response.getObject("data").getString("price"));
 			} else throw new IllegalArgumentException("unsupported price currency");
 		}
 	},
@@ -47,13 +37,8 @@ public enum PriceSource {
 		@Override
 		protected BigDecimal fetchPriceInternal(PriceCurrency priceCurrency) throws IOException {
 			if (!supportedCurrencies.contains(priceCurrency)) throw new IllegalArgumentException("unsupported price currency");
-			HttpRequest request = Utils.httpRequestBuilder().uri(URI.create("https://api.coingecko.com/api/v3/simple/price?ids=ergo&vs_currencies=" + priceCurrency.lc())).timeout(Duration.ofSeconds(10)).build();
-			try {
-				JsonObject response = JsonParser.object().from(HTTP.send(request, HttpResponse.BodyHandlers.ofString()).body());
-				return BigDecimal.valueOf(response.getObject("ergo").getDouble(priceCurrency.lc()));
-			} catch (JsonParserException | InterruptedException e) {
-				throw new RuntimeException(e);
-			}
+			JsonObject response = getJson("https://api.coingecko.com/api/v3/simple/price?ids=ergo&vs_currencies=" + priceCurrency.lc());
+			return BigDecimal.valueOf(response.getObject("ergo").getDouble(priceCurrency.lc()));
 		}
 	},
 	COINEX(PriceCurrency.USD, PriceCurrency.BTC, PriceCurrency.SAT) {
@@ -61,13 +46,8 @@ public enum PriceSource {
 		protected BigDecimal fetchPriceInternal(PriceCurrency priceCurrency) throws IOException {
 			if (!supportedCurrencies.contains(priceCurrency)) throw new IllegalArgumentException("unsupported price currency");
 			String crypto = priceCurrency == PriceCurrency.USD ? "USDT" : "BTC";
-			HttpRequest request = Utils.httpRequestBuilder().uri(URI.create("https://api.coinex.com/v1/market/ticker?market=ERG" + crypto)).timeout(Duration.ofSeconds(10)).build();
-			try {
-				JsonObject response = JsonParser.object().from(HTTP.send(request, HttpResponse.BodyHandlers.ofString()).body());
-				return new BigDecimal(response.getObject("data").getObject("ticker").getString("last"));
-			} catch (JsonParserException | InterruptedException e) {
-				throw new RuntimeException(e);
-			}
+			JsonObject response = getJson("https://api.coinex.com/v1/market/ticker?market=ERG" + crypto);
+			return new BigDecimal(response.getObject("data").getObject("ticker").getString("last"));
 		}
 	};
 
@@ -85,6 +65,26 @@ public enum PriceSource {
 
 	protected abstract BigDecimal fetchPriceInternal(PriceCurrency priceCurrency) throws IOException;
 
+	/**
+	 * @throws RateLimitedException If the source responded with 429 Too Many Requests
+	 */
+	private static JsonObject getJson(String url) throws IOException {
+		HttpRequest request = Utils.httpRequestBuilder().uri(URI.create(url)).timeout(Duration.ofSeconds(10)).build();
+		try {
+			HttpResponse<String> response = HTTP.send(request, HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() == 429) {
+				Duration retryAfter = response.headers().firstValue("Retry-After")
+						.filter(value -> value.chars().allMatch(Character::isDigit))
+						.map(value -> Duration.ofSeconds(Long.parseLong(value)))
+						.orElse(null);
+				throw new RateLimitedException(url, retryAfter);
+			}
+			return JsonParser.object().from(response.body());
+		} catch (JsonParserException | InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public final BigDecimal fetchPrice(PriceCurrency priceCurrency) throws IOException {
 		if (priceCurrency == PriceCurrency.SAT) {
 			if (!supportedCurrencies.contains(PriceCurrency.BTC)) throw new IllegalArgumentException("unsupported price currency");
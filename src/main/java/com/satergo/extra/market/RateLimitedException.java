@@ -0,0 +1,15 @@
+package com.satergo.extra.market;
+
+import java.io.IOException;
+import java.time.Duration;
+
+public class RateLimitedException extends IOException {
+
+	/** How long the source asked to wait, can be null */
+	public final Duration retryAfter;
+
+	public RateLimitedException(String url, Duration retryAfter) {
+		super("Rate limited by " + url);
+		this.retryAfter = retryAfter;
+	}
+}
@@ -6,6 +6,7 @@ import com.satergo.Utils;
 import com.satergo.controller.NodeOverviewCtrl;
 import com.satergo.ergo.ErgoInterface;
 import com.satergo.extra.DownloadTask;
+import com.satergo.extra.Scheduler;
 import com.satergo.extra.dialog.SatVoidDialog;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
@@ -32,9 +33,6 @@ import java.time.format.FormatStyle;
 import java.util.Arrays;
 import java.util.Locale;
 import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
 
 public class EmbeddedNode {
@@ -92,7 +90,7 @@ public class EmbeddedNode {
 
 	public final SimpleBooleanProperty headersSynced = new SimpleBooleanProperty(false);
 
-	private ScheduledExecutorService scheduler;
+	private Scheduler.Job statusPoll, updateCheck;
 
 	public int apiPort() {
 		return info.networkType() == NetworkType.MAINNET ? 9053 : 9052;
@@ -129,8 +127,8 @@ public class EmbeddedNode {
 	}
 
 	private void scheduleRepeatingTasks() {
-		scheduler = Executors.newScheduledThreadPool(0);
-		scheduler.scheduleAtFixedRate(() -> {
+		statusPoll = Scheduler.get().schedule("Node status", Scheduler.Priority.NORMAL,
+				Duration.ofSeconds(10), Duration.ofSeconds(2), Duration.ZERO, () -> {
 			ErgoNodeAccess.Status status = nodeAccess.getStatus();
 			int networkHeight = status.networkHeight() == 0
 					? ErgoInterface.getNetworkBlockHeight(info.networkType())
@@ -144,8 +142,9 @@ public class EmbeddedNode {
 				nodeHeaderSyncProgress.set((double) status.headerHeight() / (double) networkHeight);
 				headersSynced.set(Math.abs(status.networkHeight() - status.headerHeight()) <= 5);
 			});
-		}, 10, 2, TimeUnit.SECONDS);
-		scheduler.scheduleAtFixedRate(this::checkForUpdate, 5, Duration.ofHours(4).toSeconds(), TimeUnit.SECONDS);
+		});
+		updateCheck = Scheduler.get().schedule("Node update check", Scheduler.Priority.LOW,
+				Duration.ofSeconds(5), Duration.ofHours(4), Duration.ofMinutes(5), this::checkForUpdate);
 	}
 
 	private int[] lastVersionUpdateAlert = null;
@@ -302,7 +301,10 @@ public class EmbeddedNode {
 
 	public void stop() {
 		process.destroy();
-		scheduler.shutdown();
+		if (statusPoll != null) {
+			statusPoll.cancel();
+			updateCheck.cancel();
+		}
 	}
 	
 	public void waitForExit() {
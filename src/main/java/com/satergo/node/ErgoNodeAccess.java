@@ -1,5 +1,6 @@
 package com.satergo.node;
 
+import com.grack.nanojson.JsonArray;
 import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
@@ -10,6 +11,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.satergo.Utils.HTTP;
 import static java.net.http.HttpResponse.BodyHandlers.ofString;
@@ -38,6 +42,71 @@ public class ErgoNodeAccess {
 		}
 	}
 
+	/**
+	 * @return The IDs of the transactions in the mempool of the node
+	 */
+	public Set<String> getUnconfirmedTransactionIds() {
+		HttpRequest request = httpRequestBuilder().uri(apiAddress.resolve("/transactions/unconfirmed/transactionIds")).build();
+		try {
+			return JsonParser.array().from(HTTP.send(request, ofString()).body()).stream()
+					.map(id -> (String) id)
+					.collect(Collectors.toUnmodifiableSet());
+		} catch (JsonParserException | IOException | InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return Whether the transaction is in the mempool of the node
+	 */
+	public boolean isTransactionUnconfirmed(String txId) {
+		return statusCode("/transactions/unconfirmed/byTransactionId/" + txId) == 200;
+	}
+
+	/**
+	 * @return Whether the box is unspent, counting the transactions in the mempool of the node as spending it
+	 */
+	public boolean isBoxUnspent(String boxId) {
+		return statusCode("/utxo/withPool/byId/" + boxId) == 200;
+	}
+
+	private int statusCode(String path) {
+		HttpRequest request = httpRequestBuilder().uri(apiAddress.resolve(path)).build();
+		try {
+			return HTTP.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+		} catch (IOException | InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Asks the node for each of the transactions and compares their outputs with the ErgoTrees
+	 * @param txIds IDs of transactions in the mempool, the ones that have left it are skipped
+	 * @return The IDs of the transactions that have an output with one of the ErgoTrees
+	 */
+	public Set<String> getUnconfirmedTransactionIdsWithOutputsTo(Set<String> txIds, Set<String> ergoTreeHexes) {
+		HashSet<String> ids = new HashSet<>();
+		try {
+			for (String txId : txIds) {
+				HttpRequest request = httpRequestBuilder().uri(apiAddress.resolve("/transactions/unconfirmed/byTransactionId/" + txId)).build();
+				HttpResponse<String> response = HTTP.send(request, ofString());
+				if (response.statusCode() == 404) continue;
+				if (response.statusCode() != 200)
+					throw new IOException("The node responded with HTTP status " + response.statusCode());
+				JsonArray outputs = JsonParser.object().from(response.body()).getArray("outputs");
+				for (Object output : outputs) {
+					if (ergoTreeHexes.contains(((JsonObject) output).getString("ergoTree"))) {
+						ids.add(txId);
+						break;
+					}
+				}
+			}
+			return ids;
+		} catch (JsonParserException | IOException | InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public enum UnlockingResult { INCORRECT_API_KEY, INCORRECT_PASSWORD, NOT_INITIALIZED, UNKNOWN, SUCCESS }
 
 	public UnlockingResult unlockWallet(String apiKey, String password) {
@@ -0,0 +1,276 @@
+package com.satergo.tool;
+
+import com.satergo.FormatNumber;
+import com.satergo.Main;
+import com.satergo.Utils;
+import com.satergo.ergo.BoxSizeEstimator;
+import com.satergo.ergo.CoinSelector;
+import com.satergo.ergo.ErgoInterface;
+import com.satergo.ergo.TokenBalance;
+import org.ergoplatform.appkit.*;
+import org.ergoplatform.sdk.ErgoId;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads an airdrop file and splits the airdrop into transactions that stay under the size and cost limits of the node.
+ * Each transaction spends the change of the previous one, so they can all be built before any of them is submitted.
+ */
+class AirdropEngine {
+
+	/** Lines are read in chunks of this size, and the lines of a chunk are validated in parallel */
+	private static final int CHUNK_SIZE = 2048;
+	/** The node does not accept transactions larger than 96 KiB, the rest is left for the inputs and the change box */
+	private static final int MAX_OUTPUTS_SIZE = 64 * 1024;
+	/**
+	 * The node does not accept transactions that cost more than 1 000 000. These are rough overestimates of the cost of the outputs,
+	 * half of the limit is left for verifying the inputs.
+	 */
+	private static final long MAX_OUTPUTS_COST = 500_000, OUTPUT_COST = 1000, OUTPUT_TOKEN_COST = 200;
+
+	static class AirdropException extends RuntimeException {
+		AirdropException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * @param value null for the minimum value
+	 */
+	record Recipient(Address address, Long value, ErgoToken[] tokens) {}
+
+	/**
+	 * @param fileHash SHA-256 of the file, to recognize the same airdrop again
+	 */
+	record Airdrop(byte[] fileHash, List<Recipient> recipients, Map<String, TokenBalance> tokens) {}
+
+	/**
+	 * @param ergToSpend ERG in the outputs and the fee
+	 */
+	record Batch(int firstRecipient, int recipientCount, UnsignedTransaction unsignedTx, long ergToSpend, Map<String, Long> tokensToSpend) {}
+
+	private record Row(int lineNumber, Address address, String tokenId, long amount, String error) {}
+
+	/**
+	 * Reads the file without keeping all lines in memory. Multiple lines for the same address are combined into one output.
+	 * @param heldTokens The tokens of the wallet by ID
+	 * @throws AirdropException If a line is invalid, with the line number in the message
+	 */
+	static Airdrop read(Path file, String delimiter, Map<String, TokenBalance> heldTokens) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		class Output {
+			Long value = null;
+			final LinkedHashMap<String, Long> tokens = new LinkedHashMap<>();
+		}
+		LinkedHashMap<Address, Output> outputs = new LinkedHashMap<>();
+		HashMap<String, TokenBalance> tokensUsed = new HashMap<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new DigestInputStream(Files.newInputStream(file), digest), StandardCharsets.UTF_8))) {
+			ArrayList<String> chunk = new ArrayList<>(CHUNK_SIZE);
+			int chunkStart = 1;
+			boolean end = false;
+			while (!end) {
+				String line = reader.readLine();
+				if (line != null) chunk.add(line);
+				else end = true;
+				if (chunk.size() == CHUNK_SIZE || (end && !chunk.isEmpty())) {
+					int firstLine = chunkStart;
+					List<String> lines = List.copyOf(chunk);
+					List<Row> rows = IntStream.range(0, lines.size()).parallel()
+							.mapToObj(i -> parseRow(lines.get(i), firstLine + i, delimiter, heldTokens))
+							.toList();
+					for (Row row : rows) {
+						if (row == null) continue;
+						if (row.error() != null) throw new AirdropException(row.error());
+						Output output = outputs.computeIfAbsent(row.address(), a -> new Output());
+						if (row.tokenId() == null) {
+							output.value = output.value == null ? row.amount() : output.value + row.amount();
+						} else {
+							output.tokens.merge(row.tokenId(), row.amount(), Long::sum);
+							tokensUsed.put(row.tokenId(), heldTokens.get(row.tokenId()));
+						}
+					}
+					chunkStart += chunk.size();
+					chunk.clear();
+				}
+			}
+		}
+		ArrayList<Recipient> recipients = new ArrayList<>(outputs.size());
+		outputs.forEach((address, output) -> recipients.add(new Recipient(address, output.value,
+				output.tokens.entrySet().stream().map(e -> new ErgoToken(e.getKey(), e.getValue())).toArray(ErgoToken[]::new))));
+		return new Airdrop(digest.digest(), recipients, tokensUsed);
+	}
+
+	/**
+	 * @return null for an empty line
+	 */
+	private static Row parseRow(String line, int lineNumber, String delimiter, Map<String, TokenBalance> heldTokens) {
+		if (line.isBlank()) return null;
+		String[] parts = line.split(delimiter);
+		if (parts.length != 3) return invalidRow(lineNumber);
+		Address address;
+		BigDecimal amount;
+		try {
+			address = Address.create(parts[0].strip());
+			ErgoId.create(parts[1].strip());
+			amount = new BigDecimal(parts[2].strip());
+		} catch (RuntimeException e) {
+			return invalidRow(lineNumber);
+		}
+		if (amount.signum() <= 0) return invalidRow(lineNumber);
+		String token = parts[1].strip();
+		if (token.equals(ErgoInterface.ERG_ID)) {
+			if (!ErgoInterface.hasValidNumberOfDecimals(amount))
+				return new Row(lineNumber, null, null, 0, Main.lang("amountHasTooManyDecimals"));
+			return new Row(lineNumber, address, null, ErgoInterface.toNanoErg(amount), null);
+		}
+		TokenBalance tokenBalance = heldTokens.get(token);
+		if (tokenBalance == null)
+			return new Row(lineNumber, null, null, 0, Main.lang("youDoNotHaveEnoughOf_s").formatted('"' + token + '"'));
+		if (Utils.getNumberOfDecimalPlaces(amount) > tokenBalance.decimals())
+			return new Row(lineNumber, null, null, 0, Main.lang("token_s_hasInvalidAmount").formatted(tokenBalance.name()));
+		return new Row(lineNumber, address, token, ErgoInterface.longTokenAmount(amount, tokenBalance.decimals()), null);
+	}
+
+	private static Row invalidRow(int lineNumber) {
+		return new Row(lineNumber, null, null, 0, Main.lang("invalidAirdropFileLine_d").formatted(lineNumber));
+	}
+
+	private static class Group {
+		final int firstRecipient;
+		final UnsignedTransactionBuilder txBuilder;
+		final ArrayList<OutBox> outBoxes = new ArrayList<>();
+		long erg = 0;
+		final HashMap<String, Long> tokens = new HashMap<>();
+
+		Group(int firstRecipient, UnsignedTransactionBuilder txBuilder) {
+			this.firstRecipient = firstRecipient;
+			this.txBuilder = txBuilder;
+		}
+	}
+
+	/**
+	 * Builds the transactions for the recipients that are not covered yet. Every transaction pays a contiguous range of recipients.
+	 * @param boxes The unspent boxes of the wallet
+	 * @param tokens Information about the tokens, see {@link Airdrop#tokens()}
+	 * @throws AirdropException If the boxes do not contain enough ERG or tokens for all transactions
+	 */
+	static List<Batch> plan(BlockchainContext ctx, List<Recipient> recipients, BitSet covered, List<InputBox> boxes, Address changeAddress, Map<String, TokenBalance> tokens) throws InputBoxesSelectionException {
+		int creationHeight = ctx.getHeight();
+		long fee = Parameters.MinFee;
+		// Split the outputs into groups that fit in one transaction
+		ArrayList<Group> groups = new ArrayList<>();
+		Group group = null;
+		int outputsSize = 0;
+		long outputsCost = 0;
+		for (int i = 0; i < recipients.size(); i++) {
+			if (covered.get(i)) {
+				// the recipients after it are paid by a new transaction, so that the range of each one stays contiguous
+				group = null;
+				continue;
+			}
+			Recipient recipient = recipients.get(i);
+			int index = group == null ? 0 : group.outBoxes.size();
+			BoxSizeEstimator.Shape shape = BoxSizeEstimator.Shape.of(recipient.address(), recipient.tokens(), creationHeight, index);
+			long value = recipient.value() == null ? BoxSizeEstimator.minimumValue(shape) : recipient.value();
+			int size = BoxSizeEstimator.size(shape, value);
+			long cost = OUTPUT_COST + recipient.tokens().length * OUTPUT_TOKEN_COST;
+			if (group == null || outputsSize + size > MAX_OUTPUTS_SIZE || outputsCost + cost > MAX_OUTPUTS_COST) {
+				if (group != null) {
+					// the index of the box changed, so its size and minimum value could have too
+					shape = BoxSizeEstimator.Shape.of(recipient.address(), recipient.tokens(), creationHeight, 0);
+					value = recipient.value() == null ? BoxSizeEstimator.minimumValue(shape) : recipient.value();
+					size = BoxSizeEstimator.size(shape, value);
+				}
+				group = new Group(i, ctx.newTxBuilder());
+				groups.add(group);
+				outputsSize = 0;
+				outputsCost = 0;
+			}
+			OutBoxBuilder builder = group.txBuilder.outBoxBuilder()
+					.contract(recipient.address().toErgoContract())
+					.creationHeight(creationHeight)
+					.value(value);
+			if (recipient.tokens().length > 0)
+				builder.tokens(recipient.tokens());
+			group.outBoxes.add(builder.build());
+			group.erg += value;
+			for (ErgoToken token : recipient.tokens()) {
+				group.tokens.merge(token.getId().toString(), token.getValue(), Long::sum);
+			}
+			outputsSize += size;
+			outputsCost += cost;
+		}
+		checkAvailable(groups, boxes, fee, tokens);
+		// Build the transactions, each one can spend the change of the previous one
+		byte[] changeTree = changeAddress.getErgoAddress().script().bytes();
+		ArrayList<InputBox> available = new ArrayList<>(boxes);
+		ArrayList<Batch> batches = new ArrayList<>(groups.size());
+		for (Group g : groups) {
+			List<ErgoToken> tokenList = g.tokens.entrySet().stream().map(e -> new ErgoToken(e.getKey(), e.getValue())).toList();
+			List<InputBox> inputs = CoinSelector.SMALLEST.select(available, g.erg + fee, tokenList).boxes();
+			UnsignedTransaction unsignedTx = g.txBuilder
+					.addInputs(inputs.toArray(new InputBox[0]))
+					.addOutputs(g.outBoxes.toArray(new OutBox[0]))
+					.fee(fee)
+					.sendChangeTo(changeAddress)
+					.build();
+			HashSet<String> spent = new HashSet<>();
+			for (InputBox input : inputs) {
+				spent.add(input.getId().toString());
+			}
+			available.removeIf(box -> spent.contains(box.getId().toString()));
+			List<OutBox> outputs = unsignedTx.getOutputs();
+			for (int o = g.outBoxes.size(); o < outputs.size(); o++) {
+				if (Arrays.equals(outputs.get(o).getErgoTree().bytes(), changeTree))
+					available.add(outputs.get(o).convertToInputWith(unsignedTx.getId(), (short) o));
+			}
+			batches.add(new Batch(g.firstRecipient, g.outBoxes.size(), unsignedTx, g.erg + fee, g.tokens));
+		}
+		return batches;
+	}
+
+	private static void checkAvailable(List<Group> groups, List<InputBox> boxes, long fee, Map<String, TokenBalance> tokens) {
+		long ergNeeded = 0, ergAvailable = 0;
+		HashMap<String, Long> tokensNeeded = new HashMap<>(), tokensAvailable = new HashMap<>();
+		for (Group group : groups) {
+			ergNeeded += group.erg + fee;
+			group.tokens.forEach((id, amount) -> tokensNeeded.merge(id, amount, Long::sum));
+		}
+		for (InputBox box : boxes) {
+			ergAvailable += box.getValue();
+			for (ErgoToken token : box.getTokens()) {
+				tokensAvailable.merge(token.getId().toString(), token.getValue(), Long::sum);
+			}
+		}
+		String missingTokens = tokensNeeded.entrySet().stream()
+				.filter(e -> e.getValue() > tokensAvailable.getOrDefault(e.getKey(), 0L))
+				.map(e -> '"' + (tokens.containsKey(e.getKey()) ? tokens.get(e.getKey()).name() : e.getKey()) + '"')
+				.collect(Collectors.joining(", "));
+		if (!missingTokens.isEmpty())
+			throw new AirdropException(Main.lang("youDoNotHaveEnoughOf_s").formatted(missingTokens));
+		if (ergNeeded > ergAvailable)
+			throw new AirdropException(Main.lang("youDoNotHaveEnoughErg_s_moreNeeded").formatted(FormatNumber.ergExact(ErgoInterface.toFullErg(ergNeeded - ergAvailable))));
+	}
+
+	static Path journalFile(byte[] fileHash) {
+		return Utils.settingsDir().resolve("airdrops").resolve(HexFormat.of().formatHex(fileHash) + ".journal");
+	}
+}
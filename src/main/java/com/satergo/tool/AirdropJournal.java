@@ -0,0 +1,109 @@
+package com.satergo.tool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Records the progress of an airdrop so that it can be continued after an interruption without paying anyone twice.
+ *
+ * <p>Each line is either {@code S <txId> <first recipient> <recipient count> <signed transaction JSON>}, written before
+ * the transaction is submitted, {@code D <txId>}, written after it has been accepted, or {@code X <txId>}, written when it is
+ * known to have never taken effect. The fields are separated by tabs.
+ * Every line is flushed to the disk before continuing.
+ */
+class AirdropJournal {
+
+	record Entry(String txId, int firstRecipient, int recipientCount, String signedTxJson, boolean done) {}
+
+	private final Path file;
+	private final ArrayList<Entry> entries = new ArrayList<>();
+
+	private AirdropJournal(Path file) {
+		this.file = file;
+	}
+
+	static AirdropJournal open(Path file) throws IOException {
+		AirdropJournal journal = new AirdropJournal(file);
+		if (!Files.isRegularFile(file)) return journal;
+		ArrayList<String[]> submitting = new ArrayList<>();
+		HashSet<String> done = new HashSet<>(), dropped = new HashSet<>();
+		String[] lines = Files.readString(file, StandardCharsets.UTF_8).split("\n", -1);
+		// The last element is empty, or an incomplete line from an interrupted write (nothing is submitted before a line is complete)
+		for (int i = 0; i < lines.length - 1; i++) {
+			String[] parts = lines[i].split("\t", 5);
+			if (parts[0].equals("S") && parts.length == 5) submitting.add(parts);
+			else if (parts[0].equals("D") && parts.length == 2) done.add(parts[1]);
+			else if (parts[0].equals("X") && parts.length == 2) dropped.add(parts[1]);
+		}
+		for (String[] parts : submitting) {
+			if (dropped.contains(parts[1])) continue;
+			journal.entries.add(new Entry(parts[1], Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), parts[4], done.contains(parts[1])));
+		}
+		return journal;
+	}
+
+	synchronized List<Entry> entries() {
+		return List.copyOf(entries);
+	}
+
+	/**
+	 * @return The indexes of the recipients that are in a transaction of the journal
+	 */
+	synchronized BitSet recipientsCovered() {
+		BitSet covered = new BitSet();
+		for (Entry entry : entries) {
+			covered.set(entry.firstRecipient(), entry.firstRecipient() + entry.recipientCount());
+		}
+		return covered;
+	}
+
+	/**
+	 * @return The amount of recipients in the transactions that have been accepted
+	 */
+	synchronized int recipientsPaid() {
+		return entries.stream().filter(Entry::done).mapToInt(Entry::recipientCount).sum();
+	}
+
+	synchronized void recordSubmitting(String txId, int firstRecipient, int recipientCount, String signedTxJson) throws IOException {
+		append("S\t" + txId + "\t" + firstRecipient + "\t" + recipientCount + "\t" + signedTxJson.replace('\n', ' ') + "\n");
+		entries.add(new Entry(txId, firstRecipient, recipientCount, signedTxJson, false));
+	}
+
+	synchronized void recordDone(String txId) throws IOException {
+		append("D\t" + txId + "\n");
+		entries.replaceAll(e -> e.txId().equals(txId) ? new Entry(e.txId(), e.firstRecipient(), e.recipientCount(), e.signedTxJson(), true) : e);
+	}
+
+	/**
+	 * Forgets a transaction that never took effect, so that its recipients are included when the airdrop is planned again
+	 */
+	synchronized void recordDropped(String txId) throws IOException {
+		append("X\t" + txId + "\n");
+		entries.removeIf(e -> e.txId().equals(txId));
+	}
+
+	synchronized void delete() throws IOException {
+		Files.deleteIfExists(file);
+		entries.clear();
+	}
+
+	private void append(String line) throws IOException {
+		Files.createDirectories(file.getParent());
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+	}
+}
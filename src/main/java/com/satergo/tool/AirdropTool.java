@@ -3,24 +3,28 @@ package com.satergo.tool;
 import com.satergo.*;
 import com.satergo.ergo.ErgoInterface;
 import com.satergo.ergo.TokenBalance;
-import com.satergo.ergo.TokenSummary;
 import com.satergo.extra.SimpleTask;
 import com.satergo.extra.dialog.SatPromptDialog;
+import com.satergo.node.ErgoNodeAccess;
+import com.satergo.tool.AirdropEngine.Airdrop;
+import com.satergo.tool.AirdropEngine.AirdropException;
+import com.satergo.tool.AirdropEngine.Batch;
 import javafx.scene.control.*;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
 import javafx.scene.text.TextFlow;
 import javafx.stage.FileChooser;
-import org.ergoplatform.appkit.*;
-import org.ergoplatform.sdk.ErgoId;
-import org.ergoplatform.sdk.ErgoToken;
+import org.ergoplatform.appkit.BlockchainContext;
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.InputBoxesSelectionException;
+import org.ergoplatform.appkit.SignedTransaction;
 
 import java.io.File;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -59,155 +63,193 @@ public class AirdropTool implements Tool {
 			fileChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter(Main.lang("csvOrTsvFile"), "*.csv", "*.tsv"));
 			File file = fileChooser.showOpenDialog(tile.getScene().getWindow());
 			if (file == null) return;
-			try {
-				String delimiter;
-				if (Pattern.compile("(?i)\\.csv$").matcher(file.toString()).find())
-					delimiter = ",";
-				else if (Pattern.compile("(?i)\\.tsv$").matcher(file.toString()).find())
-					delimiter = "\t";
-				else {
-					Utils.alert(Alert.AlertType.ERROR, Main.lang("unknownFileType"));
-					return;
-				}
-				List<String> lines = Files.readAllLines(file.toPath());
-				createAirdrop(lines, delimiter).handle((airdrop, ex) -> {
-					if (ex != null) {
-						if (ex instanceof AirdropException e) {
-							Utils.alert(Alert.AlertType.ERROR, e.getMessage());
-						} else {
-							Utils.alertUnexpectedException(ex);
+			String delimiter;
+			if (Pattern.compile("(?i)\\.csv$").matcher(file.toString()).find())
+				delimiter = ",";
+			else if (Pattern.compile("(?i)\\.tsv$").matcher(file.toString()).find())
+				delimiter = "\t";
+			else {
+				Utils.alert(Alert.AlertType.ERROR, Main.lang("unknownFileType"));
+				return;
+			}
+			Map<String, TokenBalance> heldTokens = Main.get().getWallet().lastKnownBalance.get().confirmedTokens().stream()
+					.collect(Collectors.toMap(TokenBalance::id, Function.identity()));
+			new SimpleTask<>(() -> {
+				Airdrop airdrop = AirdropEngine.read(file.toPath(), delimiter, heldTokens);
+				return new Opened(airdrop, AirdropJournal.open(AirdropEngine.journalFile(airdrop.fileHash())));
+			}).onSuccess(opened -> {
+				if (!opened.journal().entries().isEmpty()) {
+					SatPromptDialog<ButtonType> resumeDialog = new SatPromptDialog<>();
+					resumeDialog.initOwner(Main.get().stage());
+					Main.get().applySameTheme(resumeDialog.getDialogPane().getScene());
+					resumeDialog.setTitle(Main.lang("tool.airdrop"));
+					resumeDialog.getDialogPane().setContent(new Label(Main.lang("airdropResume_d_d").formatted(
+							opened.journal().recipientsCovered().get(0, opened.airdrop().recipients().size()).cardinality(), opened.airdrop().recipients().size())));
+					ButtonType resume = new ButtonType(Main.lang("continue"), ButtonBar.ButtonData.YES);
+					ButtonType startOver = new ButtonType(Main.lang("startOver"), ButtonBar.ButtonData.NO);
+					resumeDialog.getDialogPane().getButtonTypes().addAll(resume, startOver, ButtonType.CANCEL);
+					ButtonType choice = resumeDialog.showForResult().orElse(null);
+					if (choice == startOver) {
+						int paid = opened.journal().recipientsPaid();
+						if (paid > 0) {
+							SatPromptDialog<Boolean> confirmation = new SatPromptDialog<>();
+							confirmation.initOwner(Main.get().stage());
+							Main.get().applySameTheme(confirmation.getDialogPane().getScene());
+							confirmation.setTitle(Main.lang("tool.airdrop"));
+							confirmation.getDialogPane().setContent(new Label(Main.lang("airdropStartOverWarning_d").formatted(paid)));
+							confirmation.getDialogPane().getButtonTypes().addAll(ButtonType.YES, ButtonType.CANCEL);
+							confirmation.setResultConverter(t -> t == ButtonType.YES);
+							if (!confirmation.showForResult().orElse(false)) return;
 						}
-						return null;
-					}
-					if (airdrop == null) return null;
-					SatPromptDialog<ButtonType> summaryDialog = new SatPromptDialog<>();
-					summaryDialog.initOwner(Main.get().stage());
-					Main.get().applySameTheme(summaryDialog.getDialogPane().getScene());
-					summaryDialog.setTitle(Main.lang("tool.airdrop"));
-					summaryDialog.getDialogPane().setContent(new Label(Main.lang("summaryOfOutgoing") + "\n\n"
-							+ FormatNumber.ergExact(ErgoInterface.toFullErg(airdrop.ergToSpend)) + " ERG\n"
-							+ airdrop.tokensToSpend.stream().map(t -> t.name() + " (" + t.id() + "): " + t.fullAmount().toPlainString()).collect(Collectors.joining("\n"))));
-					ButtonType send = new ButtonType(Main.lang("send"), ButtonBar.ButtonData.OK_DONE);
-					summaryDialog.getDialogPane().getButtonTypes().addAll(send, ButtonType.CANCEL);
-					ButtonType t = summaryDialog.showForResult().orElse(null);
-					if (t != send) return null;
-					SignedTransaction tx = Utils.createErgoClient().execute(ctx -> {
 						try {
-							return Main.get().getWallet().key().sign(ctx, airdrop.unsignedTx, Main.get().getWallet().myAddresses.keySet());
-						} catch (WalletKey.Failure e) {
-							return null;
+							opened.journal().delete();
+						} catch (IOException e) {
+							throw new RuntimeException(e);
 						}
-					});
-					if (tx == null) return null;
-					new SimpleTask<>(() -> Main.get().getWallet().transact(tx))
-							.onSuccess(txId -> {
-								if (txId != null) Utils.textDialogWithCopy(Main.lang("transactionId"), txId);
-							}).onFail(Utils::alertUnexpectedException)
-							.newThread();
-					return null;
-				});
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+					} else if (choice != resume) return;
+				}
+				prepare(opened.airdrop(), opened.journal());
+			}).onFail(AirdropTool::alertFailure).newThread();
 		});
 	}
 
-	private static class AirdropException extends RuntimeException {
-		public AirdropException(String message) {
-			super(message);
+	private record Opened(Airdrop airdrop, AirdropJournal journal) {}
+
+	private static void alertFailure(Throwable t) {
+		if (t instanceof AirdropException e) {
+			Utils.alert(Alert.AlertType.ERROR, e.getMessage());
+		} else {
+			Utils.alertUnexpectedException(t);
 		}
 	}
-	private record Airdrop(UnsignedTransaction unsignedTx, long ergToSpend, List<TokenBalance> tokensToSpend) {}
-	private static CompletableFuture<Airdrop> createAirdrop(List<String> lines, String delimiter) {
-		class Output {
-			Long value = null;
-			final HashMap<String, Long> tokens = new HashMap<>();
-		}
-		CompletableFuture<Airdrop> cf = new CompletableFuture<>();
-		Utils.createErgoClient().execute(ctx -> {
-			Wallet wallet = Main.get().getWallet();
-			UnsignedTransactionBuilder txBuilder = ctx.newTxBuilder();
-			HashMap<Address, Output> outputMap = new LinkedHashMap<>();
-			HashMap<String, TokenSummary> tokenInfo = new HashMap<>();
-			HashMap<String, Long> tokensSpent = new HashMap<>();
-			ArrayList<OutBox> outBoxes = new ArrayList<>();
-			for (String line : lines) {
-				String[] parts = line.split(delimiter);
-				if (parts.length != 3) {
-					cf.completeExceptionally(new AirdropException(Main.lang("invalidAirdropFile")));
-					return null;
-				}
-				Address address = Address.create(parts[0]);
-				String token = parts[1];
-				// Only to check validity
-				ErgoId.create(token);
-				boolean isErg = token.equals(ErgoInterface.ERG_ID);
-				BigDecimal amount = new BigDecimal(parts[2]);
-				Output output = outputMap.computeIfAbsent(address, key -> new Output());
-				if (isErg) {
-					if (!ErgoInterface.hasValidNumberOfDecimals(amount)) {
-						cf.completeExceptionally(new AirdropException(Main.lang("amountHasTooManyDecimals")));
-						return null;
-					}
-					output.value = ErgoInterface.toNanoErg(amount);
-				} else {
-					TokenBalance tokenBalance = wallet.lastKnownBalance.get().confirmedTokens().stream().filter(tb -> tb.id().equals(token)).findAny().orElseThrow();
-					int tokenDecimals = tokenBalance.decimals();
-					if (Utils.getNumberOfDecimalPlaces(amount) > tokenDecimals) {
-						cf.completeExceptionally(new AirdropException(Main.lang("token_s_hasInvalidAmount").formatted(tokenBalance.name())));
-						return null;
+
+	/**
+	 * Finishes what was left of a previous attempt, then builds the transactions for the remaining recipients and shows a summary
+	 */
+	private static void prepare(Airdrop airdrop, AirdropJournal journal) {
+		Wallet wallet = Main.get().getWallet();
+		new SimpleTask<>(() -> Utils.createErgoClient().execute(ctx -> {
+			for (AirdropJournal.Entry entry : journal.entries()) {
+				if (entry.done()) continue;
+				resolvePending(ctx, wallet, journal, entry);
+			}
+			List<InputBox> boxes = wallet.unspentBoxes().boxes(ctx, wallet.addressStream().toList());
+			try {
+				return AirdropEngine.plan(ctx, airdrop.recipients(), journal.recipientsCovered(), boxes, wallet.publicAddress(0), airdrop.tokens());
+			} catch (InputBoxesSelectionException e) {
+				throw new RuntimeException(e);
+			}
+		})).onSuccess(batches -> {
+			if (batches.isEmpty()) {
+				Utils.alert(Alert.AlertType.INFORMATION, Main.lang("airdropAlreadyComplete"));
+				return;
+			}
+			long ergToSpend = batches.stream().mapToLong(Batch::ergToSpend).sum();
+			HashMap<String, Long> tokensToSpend = new HashMap<>();
+			for (Batch batch : batches) {
+				batch.tokensToSpend().forEach((id, amount) -> tokensToSpend.merge(id, amount, Long::sum));
+			}
+			SatPromptDialog<ButtonType> summaryDialog = new SatPromptDialog<>();
+			summaryDialog.initOwner(Main.get().stage());
+			Main.get().applySameTheme(summaryDialog.getDialogPane().getScene());
+			summaryDialog.setTitle(Main.lang("tool.airdrop"));
+			summaryDialog.getDialogPane().setContent(new Label(Main.lang("summaryOfOutgoing") + "\n\n"
+					+ FormatNumber.ergExact(ErgoInterface.toFullErg(ergToSpend)) + " ERG\n"
+					+ tokensToSpend.entrySet().stream().map(e -> airdrop.tokens().get(e.getKey()).withAmount(e.getValue()))
+					.map(t -> t.name() + " (" + t.id() + "): " + t.fullAmount().toPlainString()).collect(Collectors.joining("\n"))
+					+ "\n\n" + Main.lang("airdropTransactionCount_d").formatted(batches.size())));
+			ButtonType send = new ButtonType(Main.lang("send"), ButtonBar.ButtonData.OK_DONE);
+			summaryDialog.getDialogPane().getButtonTypes().addAll(send, ButtonType.CANCEL);
+			ButtonType t = summaryDialog.showForResult().orElse(null);
+			if (t != send) return;
+			send(wallet, batches, journal);
+		}).onFail(AirdropTool::alertFailure).newThread();
+	}
+
+	/**
+	 * A transaction that was being submitted when the previous attempt stopped is either confirmed already, waiting in the mempool, or it is sent again.
+	 * If it cannot be sent again and never took effect, it is dropped from the journal.
+	 */
+	private static void resolvePending(BlockchainContext ctx, Wallet wallet, AirdropJournal journal, AirdropJournal.Entry entry) {
+		ErgoNodeAccess node = new ErgoNodeAccess(URI.create(Main.programData().nodeAddress.get()));
+		if (!isSubmitted(ctx, node, entry.txId())) {
+			SignedTransaction signedTx = ctx.signedTxFromJson(entry.signedTxJson());
+			try {
+				wallet.transact(signedTx);
+			} catch (RuntimeException e) {
+				// It could have been confirmed or entered the mempool since it was checked, or be in a block that the explorer has not indexed yet
+				if (!isSubmitted(ctx, node, entry.txId())) {
+					List<String> inputIds = signedTx.getSignedInputs().stream().map(input -> input.getId().toString()).toList();
+					List<String> spentBy = inputIds.stream().anyMatch(node::isBoxUnspent) ? null
+							: inputIds.stream().map(id -> ErgoInterface.getSpendingTransactionId(ctx.getNetworkType(), id)).toList();
+					// An input that is unspent or was spent by another transaction means that it never took effect,
+					// so its recipients are paid by the transactions that are planned next
+					if (spentBy == null || spentBy.stream().anyMatch(id -> id != null && !id.equals(entry.txId()))) {
+						try {
+							journal.recordDropped(entry.txId());
+						} catch (IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+						return;
 					}
-					long longAmount = ErgoInterface.longTokenAmount(amount, tokenDecimals);
-					tokenInfo.put(token, tokenBalance);
-					tokensSpent.put(token, tokensSpent.getOrDefault(token, 0L) + longAmount);
-					output.tokens.put(token, output.tokens.getOrDefault(token, 0L) + longAmount);
+					// The inputs are spent, by this transaction unless the explorer knows otherwise
+					if (spentBy.contains(null))
+						throw new AirdropException(Main.lang("airdropPreviousTransactionPending_s").formatted(entry.txId()));
 				}
 			}
-			int index = 0;
-			for (Map.Entry<Address, Output> entry : outputMap.entrySet()) {
-				Address address = entry.getKey();
-				Output output = entry.getValue();
-				OutBoxBuilder builder = txBuilder.outBoxBuilder();
-				builder.contract(address.toErgoContract());
-				if (output.value == null && output.tokens.isEmpty()) {
-					cf.completeExceptionally(new IllegalStateException());
-					return null;
-				}
-				if (!output.tokens.isEmpty())
-					builder.tokens(Utils.foldErgoTokens(output.tokens.entrySet().stream().map(e -> new ErgoToken(e.getKey(), e.getValue()))).toArray(new ErgoToken[0]));
-				if (output.value == null)
-					outBoxes.add(ErgoInterface.buildWithMinimumBoxValue(builder, index));
-				else outBoxes.add(builder.value(output.value).build());
-				index++;
+		}
+		try {
+			journal.recordDone(entry.txId());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return Whether the transaction is confirmed or in the mempool of the node
+	 */
+	private static boolean isSubmitted(BlockchainContext ctx, ErgoNodeAccess node, String txId) {
+		return ErgoInterface.isTransactionConfirmed(ctx.getNetworkType(), txId) || node.isTransactionUnconfirmed(txId);
+	}
+
+	/**
+	 * Unlocks the key on this thread, because that can ask for the password, then signs all transactions and submits them in order
+	 * in the background. Each transaction is recorded in the journal before it is submitted.
+	 */
+	private static void send(Wallet wallet, List<Batch> batches, AirdropJournal journal) {
+		WalletKey.Signer signer;
+		try {
+			signer = wallet.key().unlockForSigning(wallet.myAddresses.keySet());
+		} catch (WalletKey.Failure e) {
+			return;
+		}
+		List<String> txIds = Collections.synchronizedList(new ArrayList<>());
+		new SimpleTask<>(() -> {
+			WalletKey.SignedAll signed = Utils.createErgoClient().execute(ctx -> signer.signAll(ctx, batches.stream().map(Batch::unsignedTx).toList()));
+			// Only the transactions before the first one that could not be signed are sent, the rest is built again when the airdrop is continued
+			List<SignedTransaction> signedTxs = signed.signedPrefix();
+			for (int i = 0; i < signedTxs.size(); i++) {
+				SignedTransaction signedTx = signedTxs.get(i);
+				Batch batch = batches.get(i);
+				journal.recordSubmitting(signedTx.getId(), batch.firstRecipient(), batch.recipientCount(), signedTx.toJson(false));
+				wallet.transact(signedTx);
+				journal.recordDone(signedTx.getId());
+				txIds.add(signedTx.getId());
 			}
-			long ergSpentFinal = outBoxes.stream().mapToLong(OutBox::getValue).sum();
-			long fee = Parameters.MinFee;
-			List<ErgoToken> tokenList = tokensSpent.entrySet().stream().map(e -> new ErgoToken(e.getKey(), e.getValue())).toList();
-			new SimpleTask<>(() -> {
-				List<InputBox> inputBoxes = BoxOperations.createForSenders(wallet.addressStream().toList(), ctx)
-						.withAmountToSpend(ergSpentFinal)
-						.withFeeAmount(fee)
-						.withTokensToSpend(tokenList)
-						.withInputBoxesLoader(new ExplorerAndPoolUnspentBoxesLoader().withAllowChainedTx(true))
-						.loadTop();
-				return txBuilder
-						.addInputs(inputBoxes.toArray(new InputBox[0]))
-						.addOutputs(outBoxes.toArray(new OutBox[0]))
-						.fee(fee)
-						.sendChangeTo(wallet.publicAddress(0))
-						.build();
-			}).onSuccess(unsignedTx -> {
-				cf.complete(new Airdrop(
-						unsignedTx,
-						ergSpentFinal + fee,
-						tokensSpent.entrySet().stream().map(e -> new TokenBalance(e.getKey(), e.getValue(), tokenInfo.get(e.getKey()).decimals(), tokenInfo.get(e.getKey()).name())).toList()));
-			}).onFail(t -> {
-				Utils.alertTxBuildException(t, ergSpentFinal, tokenList, id -> tokenInfo.get(id.toString()).name());
-				cf.completeExceptionally(t);
-			}).newThread();
-			return null;
-		});
-		return cf;
+			return signed;
+		}).onSuccess(signed -> {
+			showTransactionIds(txIds);
+			if (!signed.allSigned())
+				Utils.alertException(Main.lang("unexpectedError"), Main.lang("airdropStopped_d_d").formatted(txIds.size(), batches.size()), signed.firstError());
+		}).onFail(ex -> {
+			showTransactionIds(txIds);
+			Utils.alertException(Main.lang("unexpectedError"), Main.lang("airdropStopped_d_d").formatted(txIds.size(), batches.size()), ex);
+		}).newThread();
+	}
+
+	private static void showTransactionIds(List<String> txIds) {
+		if (!txIds.isEmpty())
+			Utils.textDialogWithCopy(Main.lang(txIds.size() == 1 ? "transactionId" : "transactionIds"), String.join("\n", txIds));
 	}
 
 	@Override
@@ -4,17 +4,25 @@ import com.satergo.Main;
 import com.satergo.Utils;
 import com.satergo.Wallet;
 import com.satergo.WalletKey;
+import com.satergo.ergo.CoinSelector;
 import com.satergo.ergo.TokenBalance;
 import com.satergo.extra.SimpleTask;
+import com.satergo.extra.TokenList;
 import com.satergo.extra.dialog.SatPromptDialog;
 import javafx.geometry.HPos;
+import javafx.scene.Node;
 import javafx.scene.control.*;
-import javafx.scene.layout.ColumnConstraints;
-import javafx.scene.layout.GridPane;
+import javafx.scene.layout.*;
 import org.ergoplatform.appkit.*;
 import org.ergoplatform.sdk.ErgoToken;
+import org.fxmisc.flowless.Cell;
+import org.fxmisc.flowless.VirtualFlow;
+import org.fxmisc.flowless.VirtualizedScrollPane;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class BurnTokens implements Tool {
@@ -28,35 +36,31 @@ public class BurnTokens implements Tool {
 			Main.get().applySameTheme(dialog.getDialogPane().getScene());
 			dialog.setMaxHeight(tile.getScene().getWindow().getHeight());
 			dialog.setTitle(Main.lang("selectTokensToBurn"));
-			GridPane grid = new GridPane();
-			grid.setHgap(4);
-			ColumnConstraints col0 = new ColumnConstraints();
-			col0.setHalignment(HPos.CENTER);
-			grid.getColumnConstraints().addAll(col0);
-			grid.add(new Label("Burn"), 0, 0);
-			grid.add(new Label("Token name"), 1, 0);
-			grid.add(new Label("Token ID"), 2, 0);
-			grid.add(new Label("Amount"), 3, 0);
-			List<TokenBalance> tokenBalances = Main.get().getWallet().lastKnownBalance.get().confirmedTokens();
-			for (int i = 0; i < tokenBalances.size(); i++) {
-				TokenBalance tb = tokenBalances.get(i);
-				CheckBox checkBox = new CheckBox();
-				checkBox.setUserData(tb);
-				grid.add(checkBox, 0, i + 1);
-				Label name = new Label(tb.name());
-				name.setLabelFor(checkBox);
-				grid.add(name, 1, i + 1);
-				grid.add(new Label(tb.id()), 2, i + 1);
-				grid.add(new Label(tb.fullAmount().toPlainString()), 3, i + 1);
-			}
-			dialog.getDialogPane().setContent(new ScrollPane(grid));
+			TokenList tokenList = new TokenList();
+			tokenList.setAll(Main.get().getWallet().lastKnownBalance.get().confirmedTokens());
+			// The selection is kept by token ID because the rows are reused for other tokens when scrolling
+			HashSet<String> selected = new HashSet<>();
+			TextField search = new TextField();
+			search.setPromptText(Main.lang("searchTokens"));
+			search.textProperty().bindBidirectional(tokenList.search);
+			HBox.setHgrow(search, Priority.ALWAYS);
+			ComboBox<TokenList.Order> order = new ComboBox<>();
+			order.getItems().setAll(TokenList.Order.values());
+			order.setConverter(TokenList.Order.TO_NAME_CONVERTER);
+			order.valueProperty().bindBidirectional(tokenList.order);
+			VirtualizedScrollPane<VirtualFlow<TokenBalance, TokenRow>> rows = new VirtualizedScrollPane<>(
+					VirtualFlow.createVertical(tokenList.shown(), token -> new TokenRow(token, selected)));
+			rows.setPrefSize(TokenRow.WIDTH, 400);
+			VBox.setVgrow(rows, Priority.ALWAYS);
+			dialog.getDialogPane().setContent(new VBox(4,
+					new HBox(4, search, order),
+					TokenRow.grid(new Label("Burn"), new Label("Token name"), new Label("Token ID"), new Label("Amount")),
+					rows));
 			ButtonType burn = new ButtonType(Main.lang("burn"), ButtonBar.ButtonData.OK_DONE);
 			dialog.getDialogPane().getButtonTypes().addAll(burn, ButtonType.CANCEL);
 			dialog.setResultConverter(param -> {
-				if (param == burn) return grid.getChildren().stream()
-						.filter(c -> c instanceof CheckBox)
-						.filter(c -> ((CheckBox) c).isSelected())
-						.map(c -> ((TokenBalance) c.getUserData()))
+				if (param == burn) return tokenList.all().stream()
+						.filter(tb -> selected.contains(tb.id()))
 						.toList();
 				return null;
 			});
@@ -78,12 +82,9 @@ public class BurnTokens implements Tool {
 					new SimpleTask<>(() -> Utils.createErgoClient().execute(ctx -> {
 						long fee = Parameters.MinFee;
 						List<ErgoToken> ergoTokensToBurn = tokensToBurn.stream().map(t -> new ErgoToken(t.id(), t.amount())).toList();
-						List<InputBox> boxesToSpend = BoxOperations.createForSenders(wallet.addressStream().toList(), ctx)
-								.withAmountToSpend(0)
-								.withFeeAmount(fee)
-								.withTokensToSpend(ergoTokensToBurn)
-								.withInputBoxesLoader(new ExplorerAndPoolUnspentBoxesLoader().withAllowChainedTx(true))
-								.loadTop();
+						List<Address> inputAddresses = wallet.addressStream().toList();
+						List<InputBox> boxesToSpend = CoinSelector.SMALLEST.select(wallet.unspentBoxes().boxes(ctx, inputAddresses),
+								fee, ergoTokensToBurn).boxes();
 						UnsignedTransactionBuilder txBuilder = ctx.newTxBuilder();
 
 						// Manually build a change box that does not contain the tokens to be burnt
@@ -131,6 +132,52 @@ public class BurnTokens implements Tool {
 		});
 	}
 
+	private static class TokenRow implements Cell<TokenBalance, GridPane> {
+		private static final double[] COLUMN_WIDTHS = { 40, 180, 420, 120 };
+		private static final double WIDTH = Arrays.stream(COLUMN_WIDTHS).sum();
+
+		private final GridPane grid;
+		private final CheckBox checkBox = new CheckBox();
+		private final Label name = new Label(), id = new Label(), amount = new Label();
+		private final Set<String> selected;
+		private TokenBalance token;
+
+		TokenRow(TokenBalance token, Set<String> selected) {
+			this.selected = selected;
+			name.setLabelFor(checkBox);
+			grid = grid(checkBox, name, id, amount);
+			checkBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+				if (newValue) selected.add(this.token.id());
+				else selected.remove(this.token.id());
+			});
+			updateItem(token);
+		}
+
+		private static GridPane grid(Node... columns) {
+			GridPane grid = new GridPane();
+			grid.setHgap(4);
+			for (int i = 0; i < columns.length; i++) {
+				ColumnConstraints constraints = new ColumnConstraints(COLUMN_WIDTHS[i]);
+				if (i == 0) constraints.setHalignment(HPos.CENTER);
+				grid.getColumnConstraints().add(constraints);
+				grid.add(columns[i], i, 0);
+			}
+			return grid;
+		}
+
+		@Override
+		public void updateItem(TokenBalance token) {
+			this.token = token;
+			name.setText(token.name());
+			id.setText(token.id());
+			amount.setText(token.fullAmount().toPlainString());
+			checkBox.setSelected(selected.contains(token.id()));
+		}
+
+		@Override public GridPane getNode() { return grid; }
+		@Override public boolean isReusable() { return true; }
+	}
+
 	@Override
 	public String name() {
 		return Main.lang("tool.burnTokens");
@@ -0,0 +1,103 @@
+package com.satergo.tool;
+
+import com.satergo.Utils;
+import com.satergo.ergo.BoxSizeEstimator;
+import org.ergoplatform.appkit.*;
+import org.ergoplatform.sdk.ErgoToken;
+
+import java.util.*;
+
+/**
+ * Splits the consolidation of many boxes into transactions that stay under the size and cost limits of the node.
+ * The smallest boxes are spent first. If one round leaves more than one box, their outputs are combined again in another round,
+ * so the transactions of a later round spend the outputs of the earlier ones and everything can be submitted at once.
+ */
+class ConsolidationPlanner {
+
+	/** A P2PK input is about 90 bytes and verifying its signature is the most expensive part of a transaction */
+	private static final int MAX_INPUTS = 200;
+	/** A box cannot be larger than 4 KiB, and every token takes at least 33 bytes of it */
+	private static final int MAX_TOKENS = 64;
+
+	record Batch(UnsignedTransaction unsignedTx, int round, int inputCount) {}
+
+	/**
+	 * @param boxesAfter The amount of boxes left when every transaction has been confirmed
+	 */
+	record Plan(List<Batch> batches, int boxesBefore, int boxesAfter, long totalFee) {}
+
+	static Plan plan(BlockchainContext ctx, List<InputBox> boxes, Address address) {
+		int creationHeight = ctx.getHeight();
+		long fee = Parameters.MinFee;
+		ArrayList<Batch> batches = new ArrayList<>();
+		List<InputBox> remaining = new ArrayList<>(boxes);
+		int round = 0;
+		while (remaining.size() > 1) {
+			round++;
+			ArrayDeque<InputBox> queue = new ArrayDeque<>(remaining.stream().sorted(Comparator.comparingLong(InputBox::getValue)).toList());
+			ArrayList<InputBox> next = new ArrayList<>();
+			while (!queue.isEmpty()) {
+				ArrayList<InputBox> group = new ArrayList<>();
+				HashSet<String> tokenIds = new HashSet<>();
+				while (!queue.isEmpty() && group.size() < MAX_INPUTS) {
+					HashSet<String> added = new HashSet<>(tokenIds);
+					for (ErgoToken token : queue.peekFirst().getTokens()) {
+						added.add(token.getId().toString());
+					}
+					if (added.size() > MAX_TOKENS && !group.isEmpty()) break;
+					group.add(queue.pollFirst());
+					tokenIds = added;
+				}
+				long erg = group.stream().mapToLong(InputBox::getValue).sum();
+				ErgoToken[] tokens = tokensOf(group);
+				// Dust alone might not pay for the fee and the output, so the largest boxes left that fit the token limit are added to it
+				Iterator<InputBox> largestFirst = queue.descendingIterator();
+				while (erg - fee < minimumValue(address, tokens, creationHeight) && group.size() < MAX_INPUTS && largestFirst.hasNext()) {
+					InputBox largest = largestFirst.next();
+					HashSet<String> added = new HashSet<>(tokenIds);
+					for (ErgoToken token : largest.getTokens()) {
+						added.add(token.getId().toString());
+					}
+					if (added.size() > MAX_TOKENS) continue;
+					largestFirst.remove();
+					group.add(largest);
+					tokenIds = added;
+					erg += largest.getValue();
+					tokens = tokensOf(group);
+				}
+				if (group.size() < 2 || erg - fee < minimumValue(address, tokens, creationHeight)) {
+					next.addAll(group);
+					continue;
+				}
+				UnsignedTransactionBuilder txBuilder = ctx.newTxBuilder();
+				OutBoxBuilder outBoxBuilder = txBuilder.outBoxBuilder()
+						.contract(address.toErgoContract())
+						.creationHeight(creationHeight)
+						.value(erg - fee);
+				if (tokens.length > 0)
+					outBoxBuilder.tokens(tokens);
+				UnsignedTransaction unsignedTx = txBuilder
+						.addInputs(group.toArray(new InputBox[0]))
+						.addOutputs(outBoxBuilder.build())
+						.fee(fee)
+						// This will not be used but it is a requirement
+						.sendChangeTo(address)
+						.build();
+				batches.add(new Batch(unsignedTx, round, group.size()));
+				next.add(unsignedTx.getOutputs().getFirst().convertToInputWith(unsignedTx.getId(), (short) 0));
+			}
+			// Nothing could be combined, for example because every box has too many tokens
+			if (next.size() == remaining.size()) break;
+			remaining = next;
+		}
+		return new Plan(batches, boxes.size(), remaining.size(), batches.size() * fee);
+	}
+
+	private static ErgoToken[] tokensOf(List<InputBox> boxes) {
+		return Utils.foldErgoTokens(boxes.stream().flatMap(box -> box.getTokens().stream())).toArray(new ErgoToken[0]);
+	}
+
+	private static long minimumValue(Address address, ErgoToken[] tokens, int creationHeight) {
+		return BoxSizeEstimator.minimumValue(BoxSizeEstimator.Shape.of(address, tokens, creationHeight, 0));
+	}
+}
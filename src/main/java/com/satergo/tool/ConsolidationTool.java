@@ -9,15 +9,19 @@ import com.satergo.extra.SimpleTask;
 import com.satergo.extra.dialog.MoveStyle;
 import com.satergo.extra.dialog.SatPromptDialog;
 import com.satergo.extra.dialog.SatVoidDialog;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
 import javafx.util.StringConverter;
-import org.ergoplatform.appkit.*;
-import org.ergoplatform.sdk.ErgoToken;
+import org.ergoplatform.appkit.Address;
+import org.ergoplatform.appkit.InputBox;
+import org.ergoplatform.appkit.SignedTransaction;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class ConsolidationTool implements Tool {
@@ -65,60 +69,96 @@ public class ConsolidationTool implements Tool {
 				});
 				Address address = Main.get().getWallet().publicAddress(addressIndex);
 				List<Address> inputAddresses = Main.get().getWallet().addressStream().toList();
-				Utils.createErgoClient().execute(ctx -> {
-					new SimpleTask<>(() -> {
-						UnsignedTransactionBuilder txBuilder = ctx.newTxBuilder();
-						List<InputBox> inputBoxes = ErgoInterface.selectAllBoxes(inputAddresses, ctx);
-						if (inputBoxes.isEmpty())
-							throw new EmptyWalletException();
-						if (inputBoxes.size() == 1)
-							throw new OnlyOneUTXOException();
-						long totalErg = inputBoxes.stream().mapToLong(TransactionBox::getValue).sum();
-						ErgoToken[] tokens = Utils.foldErgoTokens(inputBoxes.stream().flatMap(box -> box.getTokens().stream())).toArray(new ErgoToken[0]);
-						long fee = Parameters.MinFee;
-						OutBoxBuilder outBoxBuilder = txBuilder.outBoxBuilder()
-								.contract(address.toErgoContract())
-								.value(totalErg - fee);
-						if (tokens.length > 0)
-								outBoxBuilder.tokens(tokens);
-						OutBox outBox = outBoxBuilder.build();
-						return txBuilder
-								.addInputs(inputBoxes.toArray(new InputBox[0]))
-								.addOutputs(outBox)
-								.fee(fee)
-								// This will not be used but it is a requirement
-								.sendChangeTo(address)
-								.build();
-					}).onSuccess(unsignedTx -> {
-						canBeClosed.set(true);
-						loading.close();
-						try {
-							SignedTransaction tx = Main.get().getWallet().key().sign(ctx, unsignedTx, Main.get().getWallet().myAddresses.keySet());
-							new SimpleTask<>(() -> Main.get().getWallet().transact(tx))
-									.onSuccess(txId -> {
-										if (txId != null) Utils.textDialogWithCopy(Main.lang("transactionId"), txId);
-									}).onFail(Utils::alertUnexpectedException)
-									.newThread();
-						} catch (WalletKey.Failure ex) {
-							// user already informed
-						}
-					}).onFail(ex -> {
-						if (ex instanceof EmptyWalletException) {
-							canBeClosed.set(true);
-							loading.close();
-							Utils.alert(Alert.AlertType.INFORMATION, Main.lang("yourWalletIsEmpty"));
-						} else if (ex instanceof OnlyOneUTXOException)
-							Utils.alert(Alert.AlertType.INFORMATION, Main.lang("yourWalletOnlyOneUTXO"));
-						else Utils.alertUnexpectedException(ex);
-					})
+				new SimpleTask<>(() -> Utils.createErgoClient().execute(ctx -> {
+					List<InputBox> inputBoxes = Main.get().getWallet().unspentBoxes().boxes(ctx, inputAddresses);
+					if (inputBoxes.isEmpty())
+						throw new EmptyWalletException();
+					if (inputBoxes.size() == 1)
+						throw new OnlyOneUTXOException();
+					return ConsolidationPlanner.plan(ctx, inputBoxes, address);
+				})).onSuccess(plan -> {
+					canBeClosed.set(true);
+					loading.close();
+					if (plan.batches().isEmpty()) {
+						Utils.alert(Alert.AlertType.INFORMATION, Main.lang("nothingToConsolidate"));
+						return;
+					}
+					SatPromptDialog<ButtonType> previewDialog = new SatPromptDialog<>();
+					previewDialog.initOwner(Main.get().stage());
+					Main.get().applySameTheme(previewDialog.getScene());
+					previewDialog.setHeaderText(Main.lang("consolidationPreview_d_d_d_s").formatted(
+							plan.boxesBefore(), plan.boxesAfter(), plan.batches().size(), FormatNumber.ergExact(ErgoInterface.toFullErg(plan.totalFee()))));
+					previewDialog.getDialogPane().getButtonTypes().setAll(ok, ButtonType.CANCEL);
+					if (previewDialog.showForResult().orElse(null) != ok) return;
+					WalletKey.Signer signer;
+					try {
+						signer = Main.get().getWallet().key().unlockForSigning(Main.get().getWallet().myAddresses.keySet());
+					} catch (WalletKey.Failure ex) {
+						// user already informed
+						return;
+					}
+					new SimpleTask<>(() -> Utils.createErgoClient().execute(ctx -> signer.signAll(ctx, plan.batches().stream().map(ConsolidationPlanner.Batch::unsignedTx).toList())))
+							.onSuccess(signed -> {
+								if (!signed.allSigned()) {
+									// the later rounds spend the outputs of the earlier ones, so only the transactions before the failure are submitted
+									Utils.alertException(Main.lang("unexpectedError"), Main.lang("consolidationStopped_d_d").formatted(signed.signedPrefix().size(), plan.batches().size()), signed.firstError());
+								}
+								if (!signed.signedPrefix().isEmpty())
+									submit(signed.signedPrefix());
+							})
+							.onFail(Utils::alertUnexpectedException)
 							.newThread();
-					return null;
-				});
+				}).onFail(ex -> {
+					canBeClosed.set(true);
+					loading.close();
+					if (ex instanceof EmptyWalletException)
+						Utils.alert(Alert.AlertType.INFORMATION, Main.lang("yourWalletIsEmpty"));
+					else if (ex instanceof OnlyOneUTXOException)
+						Utils.alert(Alert.AlertType.INFORMATION, Main.lang("yourWalletOnlyOneUTXO"));
+					else Utils.alertUnexpectedException(ex);
+				})
+						.newThread();
 			});
 		});
 
 	}
 
+	/**
+	 * Submits the transactions in order, because the later ones spend the outputs of the earlier ones
+	 */
+	private static void submit(List<SignedTransaction> signedTxs) {
+		SatVoidDialog progress = new SatVoidDialog();
+		progress.initOwner(Main.get().stage());
+		Main.get().applySameTheme(progress.getScene());
+		progress.setMoveStyle(MoveStyle.FOLLOW_OWNER);
+		progress.setHeaderText(Main.lang("submittingTransaction_d_d").formatted(1, signedTxs.size()));
+		SimpleBooleanProperty canBeClosed = new SimpleBooleanProperty(false);
+		progress.setOnCloseRequest(event -> {
+			if (!canBeClosed.get())
+				event.consume();
+		});
+		progress.show();
+		List<String> txIds = Collections.synchronizedList(new ArrayList<>());
+		new SimpleTask<>(() -> {
+			for (int i = 0; i < signedTxs.size(); i++) {
+				int number = i + 1;
+				Platform.runLater(() -> progress.setHeaderText(Main.lang("submittingTransaction_d_d").formatted(number, signedTxs.size())));
+				txIds.add(Main.get().getWallet().transact(signedTxs.get(i)));
+			}
+			return null;
+		}).onSuccess(v -> {
+			canBeClosed.set(true);
+			progress.close();
+			Utils.textDialogWithCopy(Main.lang(txIds.size() == 1 ? "transactionId" : "transactionIds"), String.join("\n", txIds));
+		}).onFail(ex -> {
+			canBeClosed.set(true);
+			progress.close();
+			if (!txIds.isEmpty())
+				Utils.textDialogWithCopy(Main.lang(txIds.size() == 1 ? "transactionId" : "transactionIds"), String.join("\n", txIds));
+			Utils.alertException(Main.lang("unexpectedError"), Main.lang("consolidationStopped_d_d").formatted(txIds.size(), signedTxs.size()), ex);
+		}).newThread();
+	}
+
 	@Override
 	public String name() {
 		return Main.lang("tool.consolidateUTXOs");
@@ -3,7 +3,6 @@ package com.satergo.tool;
 import com.satergo.Main;
 import com.satergo.Utils;
 import com.satergo.WalletKey;
-import com.satergo.ergo.ErgoInterface;
 import com.satergo.extra.SimpleTask;
 import com.satergo.extra.dialog.MoveStyle;
 import com.satergo.extra.dialog.SatTextInputDialog;
@@ -47,7 +46,7 @@ public class TransferEverythingTool implements Tool {
 				Utils.createErgoClient().execute(ctx -> {
 					new SimpleTask<>(() -> {
 						UnsignedTransactionBuilder txBuilder = ctx.newTxBuilder();
-						List<InputBox> inputBoxes = ErgoInterface.selectAllBoxes(inputAddresses, ctx);
+						List<InputBox> inputBoxes = Main.get().getWallet().unspentBoxes().boxes(ctx, inputAddresses);
 						if (cancelled.get())
 							throw new CancelledException();
 						if (inputBoxes.isEmpty())
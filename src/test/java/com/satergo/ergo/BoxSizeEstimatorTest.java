@@ -0,0 +1,65 @@
+package com.satergo.ergo;
+
+import org.ergoplatform.appkit.*;
+import org.ergoplatform.sdk.ErgoToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the estimates with the boxes that appkit builds. A built box has no transaction yet,
+ * so the transaction ID and the index are added to the length of its bytes.
+ */
+public class BoxSizeEstimatorTest {
+
+	private static final Address ADDRESS = ErgoInterface.getPublicEip3Address(NetworkType.MAINNET, false,
+			Mnemonic.create("slow silly start wash bundle suffer bulb ancient height spin express remind today effort helmet".toCharArray(), new char[0]), 0);
+	private static final int CREATION_HEIGHT = 1_300_000;
+
+	private static ErgoToken token(int n, long amount) {
+		byte[] id = new byte[32];
+		id[0] = (byte) n;
+		return new ErgoToken(HexFormat.of().formatHex(id), amount);
+	}
+
+	private static int actualSize(long value, ErgoToken[] tokens, ErgoValue<?>[] registers, int index) {
+		return new ColdErgoClient(NetworkType.MAINNET, Parameters.ColdClientMaxBlockCost, Parameters.ColdClientBlockVersion).execute(ctx -> {
+			OutBoxBuilder builder = ctx.newTxBuilder().outBoxBuilder()
+					.value(value)
+					.contract(ADDRESS.toErgoContract())
+					.creationHeight(CREATION_HEIGHT);
+			if (tokens.length > 0) builder.tokens(tokens);
+			if (registers.length > 0) builder.registers(registers);
+			return builder.build().getBytes().length + 32 + BoxSizeEstimator.vlqLength(index);
+		});
+	}
+
+	private static void check(ErgoToken[] tokens, ErgoValue<?>[] registers, int index) {
+		BoxSizeEstimator.Shape shape = BoxSizeEstimator.Shape.of(ADDRESS, tokens, CREATION_HEIGHT, index);
+		shape = new BoxSizeEstimator.Shape(shape.ergoTreeSize(), shape.tokenAmounts(), BoxSizeEstimator.registersSize(registers), shape.creationHeight(), shape.index());
+		for (long value : new long[] { 1, Parameters.MinChangeValue, 1_000_000_000L, Long.MAX_VALUE / 2 }) {
+			assertEquals(actualSize(value, tokens, registers, index), BoxSizeEstimator.size(shape, value), "size with value " + value);
+		}
+		// The smallest value that covers the size of the box with that value
+		long minimumValue = BoxSizeEstimator.minimumValue(shape);
+		assertEquals(actualSize(minimumValue, tokens, registers, index) * BoxSizeEstimator.MIN_VALUE_PER_BYTE, minimumValue);
+	}
+
+	@Test
+	public void noTokens() {
+		check(new ErgoToken[0], new ErgoValue<?>[0], 0);
+	}
+
+	@Test
+	public void severalTokens() {
+		check(new ErgoToken[] { token(1, 1), token(2, 1_000), token(3, Long.MAX_VALUE) }, new ErgoValue<?>[0], 200);
+	}
+
+	@Test
+	public void registers() {
+		ErgoValue<?>[] registers = { ErgoValue.of(42), ErgoValue.of(new byte[100]), ErgoValue.of(1_000_000_000_000L) };
+		check(new ErgoToken[] { token(1, 5) }, registers, 1);
+	}
+}